@@ -0,0 +1,52 @@
+package com.ly.thread;
+
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 异步线程任务
+ * 	线程池线程只执行callAsync()本身（发起异步调用），返回后立即被释放，WorkItem在返回的CompletionStage完成时才结束：
+ * 	stage正常完成为成功，异常完成为错误；超时、重试、对冲和tokenTime都按整个异步过程计算。
+ * 	超时或被取消时，若stage是CompletableFuture会被cancel，其他实现需自行处理取消
+ *
+ * @param <V> 返回值类型
+ */
+public abstract class AsyncWorkItem<V> extends CallableWorkItem<V> {
+
+	public AsyncWorkItem(){}
+
+	public AsyncWorkItem(int retryTimes){
+		super(retryTimes);
+	}
+
+	public AsyncWorkItem(int retryTimes, long timeout){
+		super(retryTimes, timeout);
+	}
+
+	public AsyncWorkItem(int retryTimes, long timeout, TimeUnit timeUnit){
+		super(retryTimes, timeout, timeUnit);
+	}
+
+	/**
+	 * 发起异步调用，不应阻塞
+	 * @return 异步结果，不可为null
+	 * @throws Exception
+	 */
+	public abstract CompletionStage<V> callAsync() throws Exception;
+
+	/**
+	 * 直接运行或经过CallableAdapter运行时，阻塞等待异步结果
+	 */
+	@Override
+	public final V call() throws Exception {
+		try {
+			return callAsync().toCompletableFuture().get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof Exception)
+				throw (Exception) cause;
+			throw e;
+		}
+	}
+}
@@ -0,0 +1,16 @@
+package com.ly.thread;
+
+/**
+ * 批量执行逻辑
+ *
+ * @param <T> 被合并的任务类型
+ */
+public interface BatchHandler<T extends WorkItem> {
+	/**
+	 * 批量执行一批任务
+	 * 	抛出异常表示整批失败（整批按重试次数重试）；单个任务失败请调用batch.fail(item, e)
+	 * @param batch 本批任务
+	 * @throws Exception
+	 */
+	void handle(BatchWorkItem<T> batch) throws Exception;
+}
@@ -0,0 +1,84 @@
+package com.ly.thread;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 由多个小任务合并而成的批量任务
+ * 	批量任务开始时各个任务依次触发beforeExecute并进入STATUS_RUNNING，
+ * 	批量任务结束时各个任务按整批结果或单独标记的失败结束，tokenTime为整批耗时；
+ * 	批量任务未开始就结束时各个任务的tokenTime为0左右
+ *
+ * @param <T> 被合并的任务类型
+ */
+public class BatchWorkItem<T extends WorkItem> extends WorkItem {
+	/** 批量执行逻辑 **/
+	private final BatchHandler<T> handler;
+	/** 本批任务 **/
+	private final List<T> items;
+	/** 本次执行中单独失败的任务 **/
+	private final Map<T, Throwable> failures = Collections.synchronizedMap(new IdentityHashMap<T, Throwable>());
+
+	BatchWorkItem(BatchHandler<T> handler, List<T> items) {
+		this.handler = handler;
+		this.items = Collections.unmodifiableList(items);
+	}
+
+	/**
+	 * 本批任务
+	 * @return
+	 */
+	public List<T> getItems() {
+		return items;
+	}
+
+	/**
+	 * 标记本批中单个任务失败
+	 * @param item 任务
+	 * @param e 异常
+	 */
+	public void fail(T item, Throwable e) {
+		if (e == null)
+			throw new NullPointerException();
+		failures.put(item, e);
+	}
+
+	@Override
+	public void beforeExecute(Thread t) {
+		for (T item : items) {
+			item.beforeExecute(t);
+			item.setRunning();
+			item.isBeforeExecuted = true;
+		}
+	}
+
+	@Override
+	public void run() {
+		//重试时清空上一次的失败标记
+		failures.clear();
+		try {
+			handler.handle(this);
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Override
+	void fireCompletion() {
+		Throwable batchThrown = getThrown();
+		for (T item : items) {
+			Throwable e = batchThrown != null ? batchThrown : failures.get(item);
+			//未开始就结束（提交被拒绝、熔断、负载保护）的任务没有经过beforeExecute
+			if (item.isReady())
+				item.setRunning();
+			try {
+				item.setOver(e);
+			} catch (RuntimeException x) {}
+		}
+		super.fireCompletion();
+	}
+}
@@ -4,6 +4,7 @@ import java.util.concurrent.Callable;
 
 /**
  * 自定义Callable类，为了更好地在事件中获取WorkItem对象
+ * 	若task是CallableWorkItem，则返回其call()的结果
  *
  *
  * @param <T>
@@ -18,7 +19,10 @@ public class CallableAdapter<T> implements Callable<T> {
     }
     
     @Override
-	public T call() {
+    @SuppressWarnings("unchecked")
+	public T call() throws Exception {
+    	if (task instanceof CallableWorkItem)
+    		return (T) ((CallableWorkItem<?>) task).call();
         task.run();
         return result;
     }
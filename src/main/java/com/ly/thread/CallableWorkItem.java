@@ -0,0 +1,87 @@
+package com.ly.thread;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 有返回值的线程任务
+ * 	线程池执行call()，结果通过getFuture()返回的CompletableFuture交付，可直接链式处理后续任务
+ *
+ * @param <V> 返回值类型
+ */
+public abstract class CallableWorkItem<V> extends WorkItem {
+	/** 运行结果（运行成功时有效）**/
+	private volatile V result;
+	/** 运行结果的Future **/
+	private final CompletableFuture<V> future = new CompletableFuture<V>();
+
+	public CallableWorkItem(){}
+
+	public CallableWorkItem(int retryTimes){
+		super(retryTimes);
+	}
+
+	public CallableWorkItem(int retryTimes, long timeout){
+		super(retryTimes, timeout);
+	}
+
+	public CallableWorkItem(int retryTimes, long timeout, TimeUnit timeUnit){
+		super(retryTimes, timeout, timeUnit);
+	}
+
+	/**
+	 * 任务逻辑
+	 * @return 运行结果
+	 * @throws Exception
+	 */
+	public abstract V call() throws Exception;
+
+	/**
+	 * 直接运行（不经过线程池）时调用call()，结果同样会被保存
+	 */
+	@Override
+	public final void run() {
+		try {
+			this.result = call();
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * 保存线程池中胜出的那一次执行的结果
+	 * @param value
+	 */
+	@SuppressWarnings("unchecked")
+	final void setResult(Object value) {
+		this.result = (V) value;
+	}
+
+	@Override
+	void fireCompletion() {
+		if (isSuccess()) {
+			future.complete(result);
+		} else {
+			Throwable e = getThrown();
+			if (e instanceof ExecutionException && e.getCause() != null)
+				e = e.getCause();
+			future.completeExceptionally(e);
+		}
+		super.fireCompletion();
+	}
+
+	public V getResult() {
+		return result;
+	}
+
+	/**
+	 * 运行结果的Future：成功时为call()的返回值，错误时为最后一次运行的异常
+	 * @return
+	 */
+	public CompletableFuture<V> getFuture() {
+		return future;
+	}
+}
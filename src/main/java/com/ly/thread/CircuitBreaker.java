@@ -0,0 +1,215 @@
+package com.ly.thread;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 熔断器
+ * 	按最近windowSize个任务的结果（运行错误，包括超时，记为失败）计算失败率，
+ * 	失败率达到阈值时打开，打开期间新任务直接以CircuitBreakerOpenException失败；
+ * 	打开openTime后进入半开状态，放行halfOpenProbes个探测任务，全部成功则关闭，任一失败则重新打开；
+ * 	进入半开状态openTime后仍有探测任务没有结果（如一直未结束）也重新打开，之后可以再次探测。
+ * 	每次状态变化递增代号，放行时返回当时的代号，只有代号与当前一致的结果才计入（关闭时放行的慢任务不会被当作探测结果）
+ *
+ */
+public class CircuitBreaker {
+	/**
+	 * 熔断器状态
+	 *
+	 */
+	public static enum State {
+		CLOSED,
+		OPEN,
+		HALF_OPEN
+	}
+	/** 名称 **/
+	private final String name;
+	/** 滑动窗口大小（任务数）**/
+	private final int windowSize;
+	/** 计算失败率所需的最少任务数 **/
+	private final int minimumCalls;
+	/** 失败率阈值，取值(0, 1] **/
+	private final double failureRateThreshold;
+	/** 打开时长（纳秒）**/
+	private final long openNanos;
+	/** 半开状态的探测任务数 **/
+	private final int halfOpenProbes;
+	/** 滑动窗口，true表示失败 **/
+	private final boolean[] window;
+	/** 窗口写入位置 **/
+	private int windowIndex = 0;
+	/** 窗口内任务数 **/
+	private int windowCount = 0;
+	/** 窗口内失败数 **/
+	private int windowFailures = 0;
+	/** 当前状态 **/
+	private volatile State state = State.CLOSED;
+	/** 状态代号，每次状态变化递增 **/
+	private long generation = 0L;
+	/** 打开截止时间 **/
+	private long openUntil;
+	/** 半开状态探测截止时间 **/
+	private long probeUntil;
+	/** 半开状态已放行的探测任务数 **/
+	private int probesIssued;
+	/** 半开状态探测成功数 **/
+	private int probesSucceeded;
+	/** 快速失败的任务数 **/
+	private final AtomicLong rejectedCount = new AtomicLong();
+	/** 打开次数 **/
+	private final AtomicLong openCount = new AtomicLong();
+
+	/**
+	 * 构造器
+	 * @param name 名称
+	 * @param windowSize 滑动窗口大小
+	 * @param minimumCalls 计算失败率所需的最少任务数
+	 * @param failureRateThreshold 失败率阈值，如0.5
+	 * @param openTime 打开时长，也是半开状态等待探测结果的最长时间
+	 * @param unit 时间单位
+	 * @param halfOpenProbes 半开状态的探测任务数
+	 */
+	public CircuitBreaker(String name, int windowSize, int minimumCalls, double failureRateThreshold,
+			long openTime, TimeUnit unit, int halfOpenProbes) {
+		if (windowSize <= 0 || halfOpenProbes <= 0)
+			throw new IllegalArgumentException("windowSize、halfOpenProbes必须大于0");
+		if (failureRateThreshold <= 0D || failureRateThreshold > 1D)
+			throw new IllegalArgumentException("failureRateThreshold取值范围为(0, 1]");
+		this.name = name;
+		this.windowSize = windowSize;
+		this.minimumCalls = Math.max(1, Math.min(minimumCalls, windowSize));
+		this.failureRateThreshold = failureRateThreshold;
+		this.openNanos = unit.toNanos(openTime);
+		this.halfOpenProbes = halfOpenProbes;
+		this.window = new boolean[windowSize];
+	}
+
+	/**
+	 * 以相同配置创建另一个熔断器（用于按任务分组熔断）
+	 * @param name 名称
+	 * @return
+	 */
+	CircuitBreaker copy(String name) {
+		return new CircuitBreaker(name, windowSize, minimumCalls, failureRateThreshold,
+				openNanos, TimeUnit.NANOSECONDS, halfOpenProbes);
+	}
+
+	/**
+	 * 申请执行一个任务
+	 * @return 放行时返回许可（当前状态代号，大于等于0），熔断中返回-1，应快速失败
+	 */
+	synchronized long tryAcquire() {
+		long now = System.nanoTime();
+		if (state == State.HALF_OPEN && probesIssued > probesSucceeded && now - probeUntil >= 0L) {
+			//探测任务超时未返回结果，视为失败
+			open();
+		}
+		if (state == State.OPEN) {
+			if (now - openUntil < 0L) {
+				rejectedCount.incrementAndGet();
+				return -1L;
+			}
+			halfOpen();
+		}
+		if (state == State.CLOSED)
+			return generation;
+		if (probesIssued < halfOpenProbes) {
+			probesIssued++;
+			return generation;
+		}
+		rejectedCount.incrementAndGet();
+		return -1L;
+	}
+
+	/**
+	 * 放行的任务未能执行（如提交被拒绝），归还许可
+	 * @param permit tryAcquire返回的许可
+	 */
+	synchronized void release(long permit) {
+		if (permit == generation && state == State.HALF_OPEN && probesIssued > 0)
+			probesIssued--;
+	}
+
+	/**
+	 * 记录放行任务的结果
+	 * @param permit tryAcquire返回的许可
+	 * @param failed 是否失败
+	 */
+	synchronized void onResult(long permit, boolean failed) {
+		//在其他状态（或上一次同一状态）中放行的任务不计入
+		if (permit != generation)
+			return;
+		switch (state) {
+		case HALF_OPEN:
+			if (failed) {
+				open();
+			} else if (++probesSucceeded >= halfOpenProbes) {
+				close();
+			}
+			break;
+		case CLOSED:
+			if (windowCount == windowSize) {
+				if (window[windowIndex])
+					windowFailures--;
+			} else {
+				windowCount++;
+			}
+			window[windowIndex] = failed;
+			if (failed)
+				windowFailures++;
+			windowIndex = (windowIndex + 1) % windowSize;
+			if (windowCount >= minimumCalls && windowFailures >= failureRateThreshold * windowCount)
+				open();
+			break;
+		default:
+			break;
+		}
+	}
+
+	private void open() {
+		generation++;
+		state = State.OPEN;
+		openUntil = System.nanoTime() + openNanos;
+		openCount.incrementAndGet();
+	}
+
+	private void halfOpen() {
+		generation++;
+		state = State.HALF_OPEN;
+		probeUntil = System.nanoTime() + openNanos;
+		probesIssued = 0;
+		probesSucceeded = 0;
+	}
+
+	private void close() {
+		generation++;
+		state = State.CLOSED;
+		windowIndex = 0;
+		windowCount = 0;
+		windowFailures = 0;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public State getState() {
+		return state;
+	}
+
+	/**
+	 * 当前窗口的失败率
+	 * @return
+	 */
+	public synchronized double getFailureRate() {
+		return windowCount == 0 ? 0D : (double) windowFailures / windowCount;
+	}
+
+	public long getRejectedCount() {
+		return rejectedCount.get();
+	}
+
+	public long getOpenCount() {
+		return openCount.get();
+	}
+}
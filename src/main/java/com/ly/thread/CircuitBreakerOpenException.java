@@ -0,0 +1,14 @@
+package com.ly.thread;
+
+/**
+ * 熔断器打开时被快速失败的任务的异常
+ *
+ *
+ */
+public class CircuitBreakerOpenException extends RuntimeException {
+	private static final long serialVersionUID = 1L;
+
+	public CircuitBreakerOpenException(String message) {
+		super(message);
+	}
+}
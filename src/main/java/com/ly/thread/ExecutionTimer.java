@@ -0,0 +1,199 @@
+package com.ly.thread;
+
+import java.util.Arrays;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 线程任务的超时/对冲定时器
+ * 	所有TCThreadPoolExecutor共用一个守护线程；定时项是可复用的TimerNode，保存在数组小顶堆中，
+ * 	添加、取消都是O(log n)且不分配对象。
+ * 	定时回调只做状态判断，需要结束WorkItem时（会执行afterExecute、完成回调等用户代码）交给completer线程池，
+ * 	避免一个慢回调推迟所有线程池的超时和对冲
+ *
+ */
+final class ExecutionTimer {
+	/** 共用实例 **/
+	private static final ExecutionTimer INSTANCE = new ExecutionTimer();
+
+	static ExecutionTimer getInstance() {
+		return INSTANCE;
+	}
+
+	/** 定时项 **/
+	abstract static class TimerNode {
+		/** 到期时间（System.nanoTime）**/
+		long deadline;
+		/** 调度时的标记，到期时原样传给onTimer，用于识别过期的调度 **/
+		long tag;
+		/** 在堆中的下标，-1表示不在堆中 **/
+		int heapIndex = -1;
+
+		/**
+		 * 到期回调，在定时器线程中执行
+		 * @param tag 调度时的标记
+		 */
+		abstract void onTimer(long tag);
+	}
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition available = lock.newCondition();
+	private TimerNode[] heap = new TimerNode[64];
+	private int size = 0;
+	private Thread thread;
+	/** 结束WorkItem的线程池，空闲线程60秒后退出 **/
+	private final ThreadPoolExecutor completer;
+
+	private ExecutionTimer() {
+		final AtomicInteger threadNumber = new AtomicInteger();
+		completer = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+				(Runnable r) -> {
+					Thread t = new Thread(r, "TCThreadPoolExecutor-completer-" + threadNumber.incrementAndGet());
+					t.setDaemon(true);
+					return t;
+				});
+	}
+
+	/**
+	 * 在completer线程池中执行定时回调触发的后续处理（如结束WorkItem）
+	 * @param task
+	 */
+	void execute(Runnable task) {
+		completer.execute(task);
+	}
+
+	/**
+	 * 调度一个定时项，已在堆中时重新调度
+	 * @param node 定时项
+	 * @param deadline 到期时间（System.nanoTime）
+	 * @param tag 标记
+	 */
+	void schedule(TimerNode node, long deadline, long tag) {
+		lock.lock();
+		try {
+			if (node.heapIndex >= 0)
+				removeAt(node.heapIndex);
+			node.deadline = deadline;
+			node.tag = tag;
+			if (size == heap.length)
+				heap = Arrays.copyOf(heap, size << 1);
+			heap[size] = node;
+			node.heapIndex = size;
+			siftUp(size++);
+			if (heap[0] == node)
+				available.signal();
+			if (thread == null)
+				startThread();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 取消定时项
+	 * @param node 定时项
+	 */
+	void cancel(TimerNode node) {
+		lock.lock();
+		try {
+			if (node.heapIndex >= 0)
+				removeAt(node.heapIndex);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void startThread() {
+		thread = new Thread(() -> loop(), "TCThreadPoolExecutor-timer");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private void loop() {
+		for (;;) {
+			TimerNode node = null;
+			long tag = 0L;
+			lock.lock();
+			try {
+				while (node == null) {
+					if (size == 0) {
+						available.awaitUninterruptibly();
+						continue;
+					}
+					long delay = heap[0].deadline - System.nanoTime();
+					if (delay <= 0L) {
+						node = heap[0];
+						tag = node.tag;
+						removeAt(0);
+					} else {
+						try {
+							available.awaitNanos(delay);
+						} catch (InterruptedException e) {}
+					}
+				}
+			} finally {
+				lock.unlock();
+			}
+			try {
+				node.onTimer(tag);
+			} catch (Throwable e) {
+				Thread t = Thread.currentThread();
+				t.getUncaughtExceptionHandler().uncaughtException(t, e);
+			}
+		}
+	}
+
+	private void removeAt(int i) {
+		TimerNode removed = heap[i];
+		removed.heapIndex = -1;
+		int last = --size;
+		if (i != last) {
+			TimerNode moved = heap[last];
+			heap[i] = moved;
+			moved.heapIndex = i;
+			heap[last] = null;
+			siftDown(i);
+			if (heap[i] == moved)
+				siftUp(i);
+		} else {
+			heap[last] = null;
+		}
+	}
+
+	private void siftUp(int i) {
+		TimerNode node = heap[i];
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			TimerNode p = heap[parent];
+			if (node.deadline - p.deadline >= 0L)
+				break;
+			heap[i] = p;
+			p.heapIndex = i;
+			i = parent;
+		}
+		heap[i] = node;
+		node.heapIndex = i;
+	}
+
+	private void siftDown(int i) {
+		TimerNode node = heap[i];
+		int half = size >>> 1;
+		while (i < half) {
+			int child = (i << 1) + 1;
+			int right = child + 1;
+			if (right < size && heap[right].deadline - heap[child].deadline < 0L)
+				child = right;
+			if (node.deadline - heap[child].deadline <= 0L)
+				break;
+			heap[i] = heap[child];
+			heap[i].heapIndex = i;
+			i = child;
+		}
+		heap[i] = node;
+		node.heapIndex = i;
+	}
+}
@@ -0,0 +1,383 @@
+package com.ly.thread;
+
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 多租户公平任务队列（加权差额轮询，DRR）
+ * 	每个租户（WorkItem.getTenant()）一个FIFO子队列，有任务的租户排成一个环：
+ * 	轮到某个租户时获得与其权重相等的额度，每取出一个任务消耗1，额度用完或子队列为空时轮到下一个租户。
+ * 	因此任一租户的突发只会排在自己的子队列里，其他租户的等待时间只取决于租户数和各自的权重
+ *
+ */
+public class FairWorkQueue extends AbstractQueue<Runnable> implements BlockingQueue<Runnable> {
+	/** 未设置租户的任务使用的租户 **/
+	public static final String DEFAULT_TENANT = "";
+	/** 默认权重 **/
+	private static final int DEFAULT_WEIGHT = 1;
+
+	/** 容量 **/
+	private final int capacity;
+	/** 租户子队列 **/
+	private final Map<String, Flow> flows = new HashMap<String, Flow>();
+	/** 有任务的租户，队首为当前轮到的租户 **/
+	private final ArrayDeque<Flow> active = new ArrayDeque<Flow>();
+	/** 元素总数 **/
+	private int count = 0;
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition notEmpty = lock.newCondition();
+	private final Condition notFull = lock.newCondition();
+
+	/**
+	 * 构造器
+	 * @param capacity 容量，小于等于0表示无界
+	 */
+	public FairWorkQueue(int capacity) {
+		this.capacity = capacity > 0 ? capacity : Integer.MAX_VALUE;
+	}
+
+	/**
+	 * 设置租户权重，权重为2的租户每轮可取出2个任务
+	 * @param tenant 租户
+	 * @param weight 权重，必须大于0
+	 */
+	public void setWeight(String tenant, int weight) {
+		if (weight <= 0)
+			throw new IllegalArgumentException("weight必须大于0");
+		lock.lock();
+		try {
+			flowOf(tenant == null ? DEFAULT_TENANT : tenant).weight = weight;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 租户的权重
+	 * @param tenant 租户
+	 * @return
+	 */
+	public int getWeight(String tenant) {
+		lock.lock();
+		try {
+			Flow f = flows.get(tenant == null ? DEFAULT_TENANT : tenant);
+			return f == null ? DEFAULT_WEIGHT : f.weight;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 租户排队中的任务数
+	 * @param tenant 租户
+	 * @return
+	 */
+	public int size(String tenant) {
+		lock.lock();
+		try {
+			Flow f = flows.get(tenant == null ? DEFAULT_TENANT : tenant);
+			return f == null ? 0 : f.items.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 取得任务所属的租户，会调用用户的getTenant()，不能在持有锁时调用
+	 */
+	private static String tenantOf(Runnable r) {
+		WorkItem w = null;
+		if (r instanceof WorkItemAttempt) {
+			w = ((WorkItemAttempt) r).task;
+		} else if (r instanceof MyFutureTask) {
+			w = ((MyFutureTask<?>) r).task;
+		} else if (r instanceof WorkItem) {
+			w = (WorkItem) r;
+		}
+		String tenant = w == null ? null : w.getTenant();
+		return tenant == null ? DEFAULT_TENANT : tenant;
+	}
+
+	/**
+	 * 取得租户子队列，需持有锁
+	 */
+	private Flow flowOf(String tenant) {
+		Flow f = flows.get(tenant);
+		if (f == null) {
+			f = new Flow(tenant);
+			flows.put(tenant, f);
+		}
+		return f;
+	}
+
+	/**
+	 * 子队列已取空：移出轮询环，默认权重的租户同时移除子队列，避免租户只增不减，需持有锁
+	 */
+	private void deactivate(Flow f) {
+		f.active = false;
+		f.deficit = 0;
+		if (f.weight == DEFAULT_WEIGHT)
+			flows.remove(f.tenant);
+	}
+
+	/**
+	 * 入队，需持有锁且未满
+	 * @param r 任务
+	 * @param tenant 任务所属的租户，在加锁前由tenantOf()取得
+	 */
+	private void enqueue(Runnable r, String tenant) {
+		Flow f = flowOf(tenant);
+		f.items.addLast(r);
+		if (!f.active) {
+			f.active = true;
+			f.deficit = 0;
+			active.addLast(f);
+		}
+		count++;
+		notEmpty.signal();
+	}
+
+	/**
+	 * 按DRR出队，需持有锁且不为空
+	 */
+	private Runnable dequeue() {
+		Flow f = active.peekFirst();
+		if (f.deficit <= 0)
+			f.deficit = f.weight;
+		Runnable r = f.items.pollFirst();
+		f.deficit--;
+		if (f.items.isEmpty()) {
+			active.pollFirst();
+			deactivate(f);
+		} else if (f.deficit <= 0) {
+			active.addLast(active.pollFirst());
+		}
+		count--;
+		notFull.signal();
+		return r;
+	}
+
+	@Override
+	public boolean offer(Runnable r) {
+		if (r == null)
+			throw new NullPointerException();
+		String tenant = tenantOf(r);
+		lock.lock();
+		try {
+			if (count >= capacity)
+				return false;
+			enqueue(r, tenant);
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void put(Runnable r) throws InterruptedException {
+		if (r == null)
+			throw new NullPointerException();
+		String tenant = tenantOf(r);
+		lock.lockInterruptibly();
+		try {
+			while (count >= capacity) {
+				notFull.await();
+			}
+			enqueue(r, tenant);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public boolean offer(Runnable r, long timeout, TimeUnit unit) throws InterruptedException {
+		if (r == null)
+			throw new NullPointerException();
+		String tenant = tenantOf(r);
+		long nanos = unit.toNanos(timeout);
+		lock.lockInterruptibly();
+		try {
+			while (count >= capacity) {
+				if (nanos <= 0L)
+					return false;
+				nanos = notFull.awaitNanos(nanos);
+			}
+			enqueue(r, tenant);
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public Runnable poll() {
+		lock.lock();
+		try {
+			return count == 0 ? null : dequeue();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public Runnable take() throws InterruptedException {
+		lock.lockInterruptibly();
+		try {
+			while (count == 0) {
+				notEmpty.await();
+			}
+			return dequeue();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException {
+		long nanos = unit.toNanos(timeout);
+		lock.lockInterruptibly();
+		try {
+			while (count == 0) {
+				if (nanos <= 0L)
+					return null;
+				nanos = notEmpty.awaitNanos(nanos);
+			}
+			return dequeue();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public Runnable peek() {
+		lock.lock();
+		try {
+			Flow f = active.peekFirst();
+			return f == null ? null : f.items.peekFirst();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public int size() {
+		lock.lock();
+		try {
+			return count;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public int remainingCapacity() {
+		lock.lock();
+		try {
+			return capacity - count;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public boolean remove(Object o) {
+		if (!(o instanceof Runnable))
+			return false;
+		String tenant = tenantOf((Runnable) o);
+		lock.lock();
+		try {
+			Flow f = flows.get(tenant);
+			if (f == null || !f.items.remove(o))
+				return false;
+			if (f.items.isEmpty()) {
+				active.remove(f);
+				deactivate(f);
+			}
+			count--;
+			notFull.signal();
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public int drainTo(Collection<? super Runnable> c) {
+		return drainTo(c, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public int drainTo(Collection<? super Runnable> c, int maxElements) {
+		if (c == null)
+			throw new NullPointerException();
+		if (c == this)
+			throw new IllegalArgumentException();
+		lock.lock();
+		try {
+			int n = 0;
+			while (n < maxElements && count > 0) {
+				c.add(dequeue());
+				n++;
+			}
+			return n;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 弱一致性的快照迭代器，不支持remove
+	 */
+	@Override
+	public Iterator<Runnable> iterator() {
+		List<Runnable> snapshot = new ArrayList<Runnable>();
+		lock.lock();
+		try {
+			for (Flow f : active) {
+				snapshot.addAll(f.items);
+			}
+		} finally {
+			lock.unlock();
+		}
+		final Iterator<Runnable> it = snapshot.iterator();
+		return new Iterator<Runnable>() {
+			@Override
+			public boolean hasNext() {
+				return it.hasNext();
+			}
+
+			@Override
+			public Runnable next() {
+				return it.next();
+			}
+		};
+	}
+
+	/**
+	 * 租户子队列
+	 *
+	 */
+	private static final class Flow {
+		final String tenant;
+		final ArrayDeque<Runnable> items = new ArrayDeque<Runnable>();
+		int weight = DEFAULT_WEIGHT;
+		/** 本轮剩余额度 **/
+		int deficit;
+		/** 是否在轮询环中 **/
+		boolean active;
+
+		Flow(String tenant) {
+			this.tenant = tenant;
+		}
+	}
+}
@@ -0,0 +1,150 @@
+package com.ly.thread;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 对冲（推测）执行策略
+ * 	一次执行在延迟时间内还没有完成时，并行发起第二次执行，先成功者胜出，另一个被取消
+ * 	对冲次数不超过 主执行次数 * maxHedgeRatio，同一个策略实例可被多个WorkItem共享。
+ * 	按分位耗时计算的延迟会被缓存，耗时记录器每新增REFRESH_INTERVAL个样本才重新排序计算一次，且同一时刻只有一个线程计算
+ *
+ */
+public class HedgePolicy {
+	/** 计算分位延迟所需的最少样本数 **/
+	static final int MIN_SAMPLES = 20;
+	/** 重新计算分位延迟的样本间隔 **/
+	static final int REFRESH_INTERVAL = 64;
+	/** 固定延迟（纳秒），小于0表示按线程池观测的分位耗时计算 **/
+	private final long delayNanos;
+	/** 分位数，如0.95 **/
+	private final double percentile;
+	/** 最大对冲比例（对冲次数 / 主执行次数）**/
+	private final double maxHedgeRatio;
+	/** 主执行次数 **/
+	private final AtomicLong primaryCount = new AtomicLong();
+	/** 对冲执行次数 **/
+	private final AtomicLong hedgeCount = new AtomicLong();
+	/** 是否有线程正在计算分位延迟 **/
+	private final AtomicBoolean refreshing = new AtomicBoolean();
+	/** 缓存的分位延迟，按记录器和其记录次数判断是否过期 **/
+	private volatile Cached cached;
+	/** 排序用的数组（持有refreshing时访问）**/
+	private long[] scratch;
+
+	private HedgePolicy(long delayNanos, double percentile, double maxHedgeRatio) {
+		if (maxHedgeRatio <= 0D)
+			throw new IllegalArgumentException("maxHedgeRatio必须大于0");
+		this.delayNanos = delayNanos;
+		this.percentile = percentile;
+		this.maxHedgeRatio = maxHedgeRatio;
+	}
+
+	/**
+	 * 固定延迟的对冲策略
+	 * @param delay 延迟
+	 * @param unit 时间单位
+	 * @param maxHedgeRatio 最大对冲比例，如0.1表示最多10%的执行会被对冲
+	 * @return
+	 */
+	public static HedgePolicy fixedDelay(long delay, TimeUnit unit, double maxHedgeRatio) {
+		if (delay < 0L)
+			throw new IllegalArgumentException("delay不可小于0");
+		return new HedgePolicy(unit.toNanos(delay), 0D, maxHedgeRatio);
+	}
+
+	/**
+	 * 以线程池观测到的分位耗时作为延迟的对冲策略，样本不足时不对冲
+	 * @param percentile 分位数，取值(0, 1]，如0.95
+	 * @param maxHedgeRatio 最大对冲比例
+	 * @return
+	 */
+	public static HedgePolicy percentileDelay(double percentile, double maxHedgeRatio) {
+		if (percentile <= 0D || percentile > 1D)
+			throw new IllegalArgumentException("percentile取值范围为(0, 1]");
+		return new HedgePolicy(-1L, percentile, maxHedgeRatio);
+	}
+
+	/**
+	 * 计算对冲延迟
+	 * @param recorder 线程池耗时记录器
+	 * @return 延迟纳秒数，小于0表示本次不对冲
+	 */
+	long hedgeDelayNanos(LatencyRecorder recorder) {
+		if (delayNanos >= 0L)
+			return delayNanos;
+		if (recorder == null || recorder.size() < MIN_SAMPLES)
+			return -1L;
+		Cached c = cached;
+		long count = recorder.getCount();
+		if ((c == null || c.recorder != recorder || count - c.count >= REFRESH_INTERVAL) && refreshing.compareAndSet(false, true)) {
+			try {
+				if (scratch == null || scratch.length < recorder.capacity())
+					scratch = new long[recorder.capacity()];
+				c = new Cached(recorder, count, recorder.percentileNanos(percentile, scratch));
+				cached = c;
+			} finally {
+				refreshing.set(false);
+			}
+		}
+		//其他线程正在计算且没有可用的缓存时本次不对冲
+		return c == null || c.recorder != recorder ? -1L : c.delayNanos;
+	}
+
+	/**
+	 * 记录一次主执行
+	 */
+	void recordPrimary() {
+		primaryCount.incrementAndGet();
+	}
+
+	/**
+	 * 尝试获取一次对冲配额
+	 * @return true：可以对冲	false：已达到对冲比例上限
+	 */
+	boolean tryAcquireHedge() {
+		for (;;) {
+			long hedges = hedgeCount.get();
+			if (hedges + 1 > primaryCount.get() * maxHedgeRatio)
+				return false;
+			if (hedgeCount.compareAndSet(hedges, hedges + 1))
+				return true;
+		}
+	}
+
+	/**
+	 * 归还一次未使用的对冲配额（对冲执行提交被拒绝）
+	 */
+	void releaseHedge() {
+		hedgeCount.decrementAndGet();
+	}
+
+	public long getPrimaryCount() {
+		return primaryCount.get();
+	}
+
+	public long getHedgeCount() {
+		return hedgeCount.get();
+	}
+
+	public double getMaxHedgeRatio() {
+		return maxHedgeRatio;
+	}
+
+	/**
+	 * 缓存的分位延迟
+	 *
+	 */
+	private static final class Cached {
+		final LatencyRecorder recorder;
+		final long count;
+		final long delayNanos;
+
+		Cached(LatencyRecorder recorder, long count, long delayNanos) {
+			this.recorder = recorder;
+			this.count = count;
+			this.delayNanos = delayNanos;
+		}
+	}
+}
@@ -0,0 +1,101 @@
+package com.ly.thread;
+
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 按业务key分道的调度器：同一个key的任务串行执行（包括重试），不同key的任务并行执行
+ * 	key按hash映射到固定数量的通道，每个通道同一时刻最多只有一个任务交给线程池，
+ * 	前一个任务结束且它的所有执行都已退出后再提交下一个（超时后忽略中断仍在运行的执行会继续占用通道）；
+ * 	通道队列无锁，空闲通道不占用线程。
+ * 	任务经管理器的doExecute提交，同样经过结果缓存、熔断和负载保护
+ *
+ */
+class KeyOrderedDispatcher {
+	/** 线程池管理器 **/
+	private final MyThreadPoolExecutorManager manager;
+	/** 通道 **/
+	private final Lane[] lanes;
+	/** 通道下标掩码 **/
+	private final int mask;
+
+	/**
+	 * 构造器
+	 * @param manager 线程池管理器
+	 * @param laneCount 通道数，会向上取整为2的幂
+	 */
+	KeyOrderedDispatcher(MyThreadPoolExecutorManager manager, int laneCount) {
+		this.manager = Objects.requireNonNull(manager);
+		int n = 1;
+		while (n < laneCount) {
+			n <<= 1;
+		}
+		this.lanes = new Lane[n];
+		for (int i = 0; i < n; i++) {
+			lanes[i] = new Lane();
+		}
+		this.mask = n - 1;
+	}
+
+	/**
+	 * 按key执行任务
+	 * @param key 业务key
+	 * @param task 任务
+	 */
+	void dispatch(Object key, WorkItem task) {
+		if (key == null || task == null)
+			throw new NullPointerException();
+		if (!task.isReady()) {
+			throw new RuntimeException("task的状态不是STATUS_READY，拒绝运行");
+		}
+		int h = key.hashCode();
+		h ^= (h >>> 16);
+		lanes[h & mask].offer(task);
+	}
+
+	/**
+	 * 通道：待执行队列 + 计数，计数从0变为1的线程负责提交，任务结束且所有执行都退出时提交下一个
+	 * 	任务可能在提交时就结束（命中缓存、熔断、被拒绝），完成回调不递归提交，而是由正在提交的线程循环提交，
+	 * 	因此很长的通道全部被拒绝也不会栈溢出
+	 */
+	private final class Lane implements WorkItemListener {
+		/** 待执行队列 **/
+		private final Queue<WorkItem> queue = new ConcurrentLinkedQueue<WorkItem>();
+		/** 未完成的任务数（包括正在执行的一个）**/
+		private final AtomicInteger pending = new AtomicInteger();
+		/** 待提交次数，从0变为1的线程负责循环提交 **/
+		private final AtomicInteger wip = new AtomicInteger();
+
+		void offer(WorkItem task) {
+			queue.offer(task);
+			if (pending.getAndIncrement() == 0)
+				submitNext();
+		}
+
+		@Override
+		public void onComplete(WorkItem task) {
+			if (pending.decrementAndGet() > 0)
+				submitNext();
+		}
+
+		private void submitNext() {
+			if (wip.getAndIncrement() != 0)
+				return;
+			do {
+				WorkItem next = queue.poll();
+				next.setQuiescenceListener(this);
+				try {
+					manager.doExecute(next);
+				} catch (RuntimeException e) {
+					//提交失败（如线程池已关闭）也要结束该任务，否则通道会停滞
+					if (next.isReady()) {
+						next.setRunning();
+						next.setOver(e);
+					}
+				}
+			} while (wip.decrementAndGet() != 0);
+		}
+	}
+}
@@ -0,0 +1,96 @@
+package com.ly.thread;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 耗时记录器
+ * 	以环形缓冲区保存最近N次执行耗时（纳秒），用于计算分位耗时
+ *
+ */
+public class LatencyRecorder {
+	/** 最近的耗时样本 **/
+	private final AtomicLongArray samples;
+	/** 累计记录次数 **/
+	private final AtomicLong count = new AtomicLong();
+
+	public LatencyRecorder(int capacity) {
+		if (capacity <= 0)
+			throw new IllegalArgumentException("capacity必须大于0");
+		this.samples = new AtomicLongArray(capacity);
+	}
+
+	/**
+	 * 记录一次耗时
+	 * @param millis 耗时（毫秒）
+	 */
+	public void record(long millis) {
+		recordNanos(TimeUnit.MILLISECONDS.toNanos(millis));
+	}
+
+	/**
+	 * 记录一次耗时
+	 * @param nanos 耗时（纳秒）
+	 */
+	public void recordNanos(long nanos) {
+		long index = count.getAndIncrement();
+		samples.set((int) (index % samples.length()), nanos);
+	}
+
+	/**
+	 * 当前有效样本数
+	 * @return
+	 */
+	public int size() {
+		return (int) Math.min(count.get(), samples.length());
+	}
+
+	/**
+	 * 累计记录次数
+	 * @return
+	 */
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * 计算分位耗时
+	 * @param percentile 分位数，取值(0, 1]，如0.95
+	 * @return 分位耗时（毫秒），没有样本时返回-1
+	 */
+	public long percentile(double percentile) {
+		long nanos = percentileNanos(percentile, null);
+		return nanos < 0L ? -1L : TimeUnit.NANOSECONDS.toMillis(nanos);
+	}
+
+	/**
+	 * 计算分位耗时
+	 * @param percentile 分位数，取值(0, 1]，如0.95
+	 * @param scratch 排序用的数组，长度不小于容量时复用，否则新建
+	 * @return 分位耗时（纳秒），没有样本时返回-1
+	 */
+	long percentileNanos(double percentile, long[] scratch) {
+		if (percentile <= 0D || percentile > 1D)
+			throw new IllegalArgumentException("percentile取值范围为(0, 1]");
+		int size = size();
+		if (size == 0)
+			return -1L;
+		long[] copy = scratch != null && scratch.length >= size ? scratch : new long[size];
+		for (int i = 0; i < size; i++) {
+			copy[i] = samples.get(i);
+		}
+		Arrays.sort(copy, 0, size);
+		int index = (int) Math.ceil(percentile * size) - 1;
+		return copy[Math.max(index, 0)];
+	}
+
+	/**
+	 * 缓冲区容量
+	 * @return
+	 */
+	int capacity() {
+		return samples.length();
+	}
+}
@@ -0,0 +1,130 @@
+package com.ly.thread;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按队列等待时间（sojourn）丢弃任务的负载保护，参考CoDel
+ * 	线程池每取出一次执行就记录其在队列中的等待时间，每个区间结束时检查区间内的最小等待时间：
+ * 	最小值仍高于目标值说明队列积压无法自行消化，进入过载状态，否则退出过载状态。
+ * 	过载状态下，持续过载时检查区间按interval/sqrt(次数)缩短（CoDel控制律）；
+ * 	新提交的任务按丢弃模式被拒绝，以RejectedExecutionException结束，已在队列中的任务不受影响，
+ * 	队列为空时总是放行
+ *
+ */
+public class LoadShedder {
+	/**
+	 * 丢弃模式
+	 *
+	 */
+	public static enum Mode {
+		/** 过载时拒绝所有新提交的任务（后到先丢）**/
+		NEWEST,
+		/** 过载时拒绝优先级（WorkItem.getShedPriority()）低于丢弃级别的新任务，持续过载时每个区间丢弃级别加1 **/
+		PRIORITY
+	}
+	/** 目标等待时间（纳秒）**/
+	private final long targetNanos;
+	/** 检查区间（纳秒）**/
+	private final long intervalNanos;
+	/** 丢弃模式 **/
+	private final Mode mode;
+	/** 本区间内的最小等待时间 **/
+	private final AtomicLong intervalMin = new AtomicLong(Long.MAX_VALUE);
+	/** 本区间结束时间 **/
+	private volatile long intervalEnd;
+	/** 是否过载 **/
+	private volatile boolean overloaded;
+	/** 连续过载的区间数，即PRIORITY模式的丢弃级别 **/
+	private volatile int shedLevel;
+	/** 丢弃的任务数 **/
+	private final AtomicLong shedCount = new AtomicLong();
+
+	/**
+	 * 构造器
+	 * @param target 目标等待时间，如5毫秒
+	 * @param interval 检查区间，应大于正常情况下任务的执行时间，如100毫秒
+	 * @param unit 时间单位
+	 * @param mode 丢弃模式
+	 */
+	public LoadShedder(long target, long interval, TimeUnit unit, Mode mode) {
+		if (target <= 0L || interval <= 0L)
+			throw new IllegalArgumentException("target、interval必须大于0");
+		if (mode == null)
+			throw new NullPointerException("mode不可为null");
+		this.targetNanos = unit.toNanos(target);
+		this.intervalNanos = unit.toNanos(interval);
+		this.mode = mode;
+		this.intervalEnd = System.nanoTime() + intervalNanos;
+	}
+
+	/**
+	 * 记录一次执行在队列中的等待时间（由线程池线程调用）
+	 * @param sojournNanos 等待时间
+	 */
+	void onDequeue(long sojournNanos) {
+		long min;
+		while (sojournNanos < (min = intervalMin.get())) {
+			if (intervalMin.compareAndSet(min, sojournNanos))
+				break;
+		}
+		long now = System.nanoTime();
+		if (now - intervalEnd >= 0L)
+			endInterval(now);
+	}
+
+	/**
+	 * 区间结束：按区间内的最小等待时间更新过载状态
+	 * @param now 当前时间
+	 */
+	private synchronized void endInterval(long now) {
+		if (now - intervalEnd < 0L)
+			return;
+		long min = intervalMin.getAndSet(Long.MAX_VALUE);
+		if (min != Long.MAX_VALUE && min > targetNanos) {
+			int level = shedLevel + 1;
+			shedLevel = level;
+			overloaded = true;
+			intervalEnd = now + (long) (intervalNanos / Math.sqrt(level));
+		} else {
+			shedLevel = 0;
+			overloaded = false;
+			intervalEnd = now + intervalNanos;
+		}
+	}
+
+	/**
+	 * 是否放行一个新任务
+	 * @param task 任务
+	 * @param queueEmpty 线程池队列是否为空
+	 * @return true：放行	false：应丢弃
+	 */
+	boolean tryAdmit(WorkItem task, boolean queueEmpty) {
+		if (!overloaded || queueEmpty)
+			return true;
+		if (mode == Mode.PRIORITY && task.getShedPriority() >= shedLevel)
+			return true;
+		shedCount.incrementAndGet();
+		return false;
+	}
+
+	public Mode getMode() {
+		return mode;
+	}
+
+	public boolean isOverloaded() {
+		return overloaded;
+	}
+
+	/**
+	 * 当前丢弃级别（连续过载的区间数）
+	 * @return
+	 */
+	public int getShedLevel() {
+		return shedLevel;
+	}
+
+	public long getShedCount() {
+		return shedCount.get();
+	}
+}
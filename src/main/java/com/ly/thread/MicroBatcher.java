@@ -0,0 +1,169 @@
+package com.ly.thread;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 微批处理器：在线程池管理器前合并同一类型的小任务
+ * 	同一个BatchHandler的任务进入同一个缓冲区，缓冲区达到maxBatchSize或等待超过linger时间时，
+ * 	合并为一个BatchWorkItem提交给管理器执行，结束后把状态、异常、耗时回写到每个原始任务
+ *
+ */
+public class MicroBatcher {
+	/** 线程池管理器 **/
+	private final MyThreadPoolExecutorManager manager;
+	/** 每批最大任务数 **/
+	private final int maxBatchSize;
+	/** 最长等待时间（纳秒）**/
+	private final long lingerNanos;
+	/** 批量任务的重试次数 **/
+	private volatile int batchRetryTimes = 0;
+	/** 批量任务的超时时间（毫秒）**/
+	private volatile long batchTimeout = -1L;
+	/** 缓冲区，按批量类型区分 **/
+	private final Map<BatchHandler<?>, Buffer<?>> buffers = new ConcurrentHashMap<BatchHandler<?>, Buffer<?>>();
+	/** 等待超时刷新定时器 **/
+	private final ScheduledThreadPoolExecutor timer;
+
+	/**
+	 * 构造器
+	 * @param manager 线程池管理器
+	 * @param maxBatchSize 每批最大任务数
+	 * @param linger 最长等待时间
+	 * @param unit 时间单位
+	 */
+	public MicroBatcher(MyThreadPoolExecutorManager manager, int maxBatchSize, long linger, TimeUnit unit) {
+		if (manager == null || unit == null)
+			throw new NullPointerException();
+		if (maxBatchSize <= 0)
+			throw new IllegalArgumentException("maxBatchSize必须大于0");
+		this.manager = manager;
+		this.maxBatchSize = maxBatchSize;
+		this.lingerNanos = unit.toNanos(linger);
+		this.timer = new ScheduledThreadPoolExecutor(1, (Runnable r) -> {
+			Thread t = new Thread(r, "MicroBatcher-" + manager.getName());
+			t.setDaemon(true);
+			return t;
+		});
+		this.timer.setRemoveOnCancelPolicy(true);
+	}
+
+	/**
+	 * 添加一个任务，同一个handler的任务会被合并执行
+	 * @param handler 批量执行逻辑，同时作为批量类型
+	 * @param item 任务
+	 */
+	@SuppressWarnings("unchecked")
+	public <T extends WorkItem> void doExecute(BatchHandler<T> handler, T item) {
+		if (handler == null || item == null)
+			throw new NullPointerException();
+		if (!item.isReady()) {
+			throw new RuntimeException("task的状态不是STATUS_READY，拒绝运行");
+		}
+		Buffer<T> buffer = (Buffer<T>) buffers.get(handler);
+		if (buffer == null) {
+			buffers.putIfAbsent(handler, new Buffer<T>(handler));
+			buffer = (Buffer<T>) buffers.get(handler);
+		}
+		buffer.add(item);
+	}
+
+	/**
+	 * 立即刷新所有缓冲区
+	 */
+	public void flush() {
+		for (Buffer<?> buffer : buffers.values()) {
+			buffer.flush();
+		}
+	}
+
+	/**
+	 * 刷新所有缓冲区并关闭定时器，不关闭线程池管理器
+	 */
+	public void close() {
+		flush();
+		timer.shutdownNow();
+	}
+
+	public void setBatchRetryTimes(int batchRetryTimes) {
+		this.batchRetryTimes = batchRetryTimes;
+	}
+
+	public void setBatchTimeout(long batchTimeout) {
+		this.batchTimeout = batchTimeout;
+	}
+
+	/**
+	 * 缓冲区
+	 */
+	private final class Buffer<T extends WorkItem> {
+		private final BatchHandler<T> handler;
+		private List<T> items;
+		/** 每次刷新后加一，用于判断定时刷新是否过期 **/
+		private long generation = 0L;
+
+		Buffer(BatchHandler<T> handler) {
+			this.handler = handler;
+		}
+
+		void add(T item) {
+			List<T> full = null;
+			synchronized (this) {
+				if (items == null) {
+					items = new ArrayList<T>(maxBatchSize);
+					final long gen = generation;
+					timer.schedule(() -> flush(gen), lingerNanos, TimeUnit.NANOSECONDS);
+				}
+				items.add(item);
+				if (items.size() >= maxBatchSize)
+					full = take();
+			}
+			submit(full);
+		}
+
+		void flush() {
+			List<T> batch;
+			synchronized (this) {
+				batch = take();
+			}
+			submit(batch);
+		}
+
+		private void flush(long gen) {
+			List<T> batch;
+			synchronized (this) {
+				if (gen != generation)
+					return;
+				batch = take();
+			}
+			submit(batch);
+		}
+
+		private List<T> take() {
+			List<T> batch = items;
+			items = null;
+			generation++;
+			return batch;
+		}
+
+		private void submit(List<T> batch) {
+			if (batch == null || batch.isEmpty())
+				return;
+			BatchWorkItem<T> w = new BatchWorkItem<T>(handler, batch);
+			w.setRetryTimes(batchRetryTimes);
+			w.setTimeout(batchTimeout);
+			try {
+				manager.doExecute(w);
+			} catch (RuntimeException e) {
+				if (w.isReady()) {
+					w.setRunning();
+					w.setOver(e);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,346 @@
+package com.ly.thread;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 基于数组的有界无锁多生产者多消费者队列
+ * 	每个槽位带一个序号，生产者/消费者通过CAS推进tail/head领取槽位，offer/poll不加锁也不分配节点；
+ * 	head、tail前后填充，避免伪共享。
+ * 	阻塞操作采用先自旋、再让出CPU、最后挂起的等待策略，只有存在挂起线程时offer/poll才会去加锁唤醒。
+ * 	不支持从队列中间删除元素：remove(Object)始终返回false
+ *
+ * @param <E>
+ */
+public class MpmcArrayBlockingQueue<E> extends AbstractQueue<E> implements BlockingQueue<E> {
+	/** 挂起前的自旋次数 **/
+	private static final int SPIN_TRIES = 100;
+	/** 挂起前的让出CPU次数 **/
+	private static final int YIELD_TRIES = 10;
+
+	/** 元素 **/
+	private final AtomicReferenceArray<E> buffer;
+	/** 槽位序号：等于pos表示可写入，等于pos+1表示可读取 **/
+	private final AtomicLongArray sequences;
+	/** 下标掩码 **/
+	private final int mask;
+	/** 容量 **/
+	private final int capacity;
+	/** 下一个写入位置 **/
+	private final PaddedSequence tail = new PaddedSequence();
+	/** 下一个读取位置 **/
+	private final PaddedSequence head = new PaddedSequence();
+	/** 挂起等待的锁，仅在有线程挂起时使用 **/
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition notEmpty = lock.newCondition();
+	private final Condition notFull = lock.newCondition();
+	/** 挂起等待元素的消费者数 **/
+	private final AtomicInteger waitingConsumers = new AtomicInteger();
+	/** 挂起等待空位的生产者数 **/
+	private final AtomicInteger waitingProducers = new AtomicInteger();
+
+	/**
+	 * 构造器
+	 * @param capacity 容量，会向上取整为2的幂
+	 */
+	public MpmcArrayBlockingQueue(int capacity) {
+		if (capacity < 2)
+			throw new IllegalArgumentException("capacity不可小于2");
+		int n = 1;
+		while (n < capacity) {
+			n <<= 1;
+		}
+		this.capacity = n;
+		this.mask = n - 1;
+		this.buffer = new AtomicReferenceArray<E>(n);
+		this.sequences = new AtomicLongArray(n);
+		for (int i = 0; i < n; i++) {
+			sequences.set(i, i);
+		}
+	}
+
+	@Override
+	public boolean offer(E e) {
+		if (e == null)
+			throw new NullPointerException();
+		long pos = tail.get();
+		for (;;) {
+			int index = (int) (pos & mask);
+			long dif = sequences.get(index) - pos;
+			if (dif == 0L) {
+				if (tail.compareAndSet(pos, pos + 1)) {
+					buffer.lazySet(index, e);
+					sequences.set(index, pos + 1);
+					if (waitingConsumers.get() > 0)
+						signal(notEmpty);
+					return true;
+				}
+				pos = tail.get();
+			} else if (dif < 0L) {
+				//队列已满
+				return false;
+			} else {
+				pos = tail.get();
+			}
+		}
+	}
+
+	@Override
+	public E poll() {
+		long pos = head.get();
+		for (;;) {
+			int index = (int) (pos & mask);
+			long dif = sequences.get(index) - (pos + 1);
+			if (dif == 0L) {
+				if (head.compareAndSet(pos, pos + 1)) {
+					E e = buffer.get(index);
+					buffer.lazySet(index, null);
+					sequences.set(index, pos + capacity);
+					if (waitingProducers.get() > 0)
+						signal(notFull);
+					return e;
+				}
+				pos = head.get();
+			} else if (dif < 0L) {
+				//队列为空
+				return null;
+			} else {
+				pos = head.get();
+			}
+		}
+	}
+
+	@Override
+	public E peek() {
+		long pos = head.get();
+		for (;;) {
+			int index = (int) (pos & mask);
+			long dif = sequences.get(index) - (pos + 1);
+			if (dif < 0L)
+				return null;
+			E e = buffer.get(index);
+			if (dif == 0L && e != null && head.get() == pos)
+				return e;
+			pos = head.get();
+		}
+	}
+
+	@Override
+	public void put(E e) throws InterruptedException {
+		offer(e, Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+	}
+
+	@Override
+	public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
+		if (offer(e))
+			return true;
+		long deadline = deadline(timeout, unit);
+		for (int i = 0; i < SPIN_TRIES + YIELD_TRIES; i++) {
+			if (i >= SPIN_TRIES)
+				Thread.yield();
+			if (offer(e))
+				return true;
+		}
+		for (;;) {
+			if (Thread.interrupted())
+				throw new InterruptedException();
+			long nanos = deadline - System.nanoTime();
+			if (nanos <= 0L)
+				return false;
+			lock.lockInterruptibly();
+			try {
+				waitingProducers.incrementAndGet();
+				try {
+					if (size() >= capacity)
+						notFull.awaitNanos(nanos);
+				} finally {
+					waitingProducers.decrementAndGet();
+				}
+			} finally {
+				lock.unlock();
+			}
+			if (offer(e))
+				return true;
+		}
+	}
+
+	@Override
+	public E take() throws InterruptedException {
+		return poll(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+	}
+
+	@Override
+	public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+		E e = poll();
+		if (e != null)
+			return e;
+		long deadline = deadline(timeout, unit);
+		for (int i = 0; i < SPIN_TRIES + YIELD_TRIES; i++) {
+			if (i >= SPIN_TRIES)
+				Thread.yield();
+			if ((e = poll()) != null)
+				return e;
+		}
+		for (;;) {
+			if (Thread.interrupted())
+				throw new InterruptedException();
+			long nanos = deadline - System.nanoTime();
+			if (nanos <= 0L)
+				return null;
+			lock.lockInterruptibly();
+			try {
+				waitingConsumers.incrementAndGet();
+				try {
+					if (isEmpty())
+						notEmpty.awaitNanos(nanos);
+				} finally {
+					waitingConsumers.decrementAndGet();
+				}
+			} finally {
+				lock.unlock();
+			}
+			if ((e = poll()) != null)
+				return e;
+		}
+	}
+
+	/**
+	 * 计算截止时间，避免溢出
+	 */
+	private static long deadline(long timeout, TimeUnit unit) {
+		long nanos = unit.toNanos(timeout);
+		long now = System.nanoTime();
+		return nanos >= Long.MAX_VALUE - now ? Long.MAX_VALUE : now + nanos;
+	}
+
+	/**
+	 * 唤醒一个挂起的线程
+	 * @param condition
+	 */
+	private void signal(Condition condition) {
+		lock.lock();
+		try {
+			condition.signal();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public int size() {
+		for (;;) {
+			long h = head.get();
+			long t = tail.get();
+			if (h == head.get()) {
+				long size = t - h;
+				return (int) Math.max(0L, Math.min(size, capacity));
+			}
+		}
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return tail.get() - head.get() <= 0L;
+	}
+
+	@Override
+	public int remainingCapacity() {
+		return capacity - size();
+	}
+
+	/**
+	 * 不支持从队列中间删除
+	 * @return false
+	 */
+	@Override
+	public boolean remove(Object o) {
+		return false;
+	}
+
+	@Override
+	public int drainTo(Collection<? super E> c) {
+		return drainTo(c, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public int drainTo(Collection<? super E> c, int maxElements) {
+		if (c == null)
+			throw new NullPointerException();
+		if (c == this)
+			throw new IllegalArgumentException();
+		int n = 0;
+		E e;
+		while (n < maxElements && (e = poll()) != null) {
+			c.add(e);
+			n++;
+		}
+		return n;
+	}
+
+	/**
+	 * 弱一致性的快照迭代器，不支持remove
+	 */
+	@Override
+	public Iterator<E> iterator() {
+		List<E> snapshot = new ArrayList<E>();
+		long t = tail.get();
+		for (long pos = head.get(); pos < t; pos++) {
+			int index = (int) (pos & mask);
+			E e = buffer.get(index);
+			if (e != null && sequences.get(index) == pos + 1)
+				snapshot.add(e);
+		}
+		final Iterator<E> it = snapshot.iterator();
+		return new Iterator<E>() {
+			@Override
+			public boolean hasNext() {
+				return it.hasNext();
+			}
+
+			@Override
+			public E next() {
+				return it.next();
+			}
+		};
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * 前后填充的序号，避免head、tail与其他变量落在同一缓存行
+	 */
+	static class LhsPadding {
+		long p01, p02, p03, p04, p05, p06, p07;
+	}
+
+	static class SequenceValue extends LhsPadding {
+		volatile long value;
+	}
+
+	static final class PaddedSequence extends SequenceValue {
+		private static final AtomicLongFieldUpdater<SequenceValue> UPDATER =
+				AtomicLongFieldUpdater.newUpdater(SequenceValue.class, "value");
+		long p11, p12, p13, p14, p15, p16, p17;
+
+		long get() {
+			return value;
+		}
+
+		boolean compareAndSet(long expect, long update) {
+			return UPDATER.compareAndSet(this, expect, update);
+		}
+	}
+}
@@ -11,6 +11,10 @@ import java.util.concurrent.*;
  *
  */
 public class MyScheduledThreadPoolExecutor extends ScheduledThreadPoolExecutor {
+	/**
+	 * 线程池名称，用于监控事件
+	 */
+	private volatile String poolName = "MyScheduledThreadPoolExecutor@" + Integer.toHexString(System.identityHashCode(this));
 	/**
 	 * 将BlockingQueue<WorkItem>翻译成BlockingQueue<Runnable>
 	 * 	解决泛型子类无法用父类的问题
@@ -37,6 +41,14 @@ public class MyScheduledThreadPoolExecutor extends ScheduledThreadPoolExecutor {
 		super(corePoolSize);
 	}
 
+	public String getPoolName() {
+		return poolName;
+	}
+
+	void setPoolName(String poolName) {
+		this.poolName = poolName;
+	}
+
 
 	/**
 	 * 同程自定义线程池核心方法：执行一个线程任务task
@@ -62,9 +74,11 @@ public class MyScheduledThreadPoolExecutor extends ScheduledThreadPoolExecutor {
 		if (isTimeoutFuncSet && timeUnit == null)
 			throw new NullPointerException("timeout设置为：" + timeout + "，TimeUnit不可为null，请重新设置");
 		//添加到执行队列
-		Future<?> f = super.submit(new CallableAdapter<Void>(task, null));
+		final long startNanos = System.nanoTime();
+		Future<?> f = submitAttempt(task, 1, WorkItemEvents.KIND_FIRST);
 		doExecuteWorkItem(retryTimes, f, (int retry, Future<?> future) -> {
 			Throwable thrown = null;
+			int attempt = 1;
 			//第一次执行
 			try {
 				try {
@@ -74,8 +88,7 @@ public class MyScheduledThreadPoolExecutor extends ScheduledThreadPoolExecutor {
 						future.get();
 					}
 				} catch (InterruptedException | ExecutionException | TimeoutException e) {
-					if (future != null)
-						future.cancel(true);
+					onAttemptFailed(task, attempt, future, e);
 					thrown = e;
 				}
 			} catch (RuntimeException x) {
@@ -90,7 +103,8 @@ public class MyScheduledThreadPoolExecutor extends ScheduledThreadPoolExecutor {
 				if (thrown != null) {
 					for (int i = 1; i <= retry; i++) {
 						try {
-							future = this.submit(new CallableAdapter<Void>(task, null));
+							WorkItemEvents.retry(poolName, task, ++attempt, thrown);
+							future = submitAttempt(task, attempt, WorkItemEvents.KIND_RETRY);
 							//future = TCThreadPoolExecutor.super.submit(task, null);
 							//future = TCThreadPoolExecutor.super.submit(new CallableAdapter<Void>(task, null)); //new CallableAdapter<Void>(task, null) //Executors.callable(task, null)
 							if (isTimeoutFuncSet) {
@@ -101,8 +115,7 @@ public class MyScheduledThreadPoolExecutor extends ScheduledThreadPoolExecutor {
 							thrown = null;
 							break;
 						} catch (InterruptedException | ExecutionException | TimeoutException e) {
-							if (future != null)
-								future.cancel(true);
+							onAttemptFailed(task, attempt, future, e);
 							thrown = e;
 						}
 					}
@@ -114,10 +127,37 @@ public class MyScheduledThreadPoolExecutor extends ScheduledThreadPoolExecutor {
 			} catch (Throwable x) {
 				thrown = x; throw new Error(x);
 			} finally {
+				WorkItemEvents.complete(poolName, task, attempt, System.nanoTime() - startNanos, thrown);
 				task.setOver(thrown);
 			}
 		});
 	}
+	/**
+	 * 提交一次执行
+	 * @param task 线程任务
+	 * @param attempt 第几次执行
+	 * @param kind 执行类型（首次、重试）
+	 * @return 本次执行的Future
+	 */
+	private Future<?> submitAttempt(WorkItem task, int attempt, String kind) {
+		AttemptTask f = new AttemptTask(task, attempt);
+		super.execute(f);
+		WorkItemEvents.enqueue(poolName, task, attempt, kind);
+		return f;
+	}
+	/**
+	 * 一次执行失败：取消仍在运行的执行并记录事件
+	 * @param task 线程任务
+	 * @param attempt 第几次执行
+	 * @param future 本次执行的Future
+	 * @param e 失败原因
+	 */
+	private void onAttemptFailed(WorkItem task, int attempt, Future<?> future, Exception e) {
+		if (e instanceof TimeoutException)
+			WorkItemEvents.timeout(poolName, task, attempt, task.getTimeUnit().toNanos(task.getTimeout()));
+		if (future != null && future.cancel(true))
+			WorkItemEvents.cancel(poolName, task, attempt, e instanceof TimeoutException ? "timeout" : "failed");
+	}
 	/**
 	 * 使用异步Future监听WorkItem线程
 	 * @param retryTimes
@@ -176,4 +216,49 @@ public class MyScheduledThreadPoolExecutor extends ScheduledThreadPoolExecutor {
 		}
 		return w;
 	}
+
+	/**
+	 * doExecute的一次执行（首次或重试），记录第几次执行和入队时间，运行前后记录监控事件
+	 * 	由线程池包装为ScheduledFutureTask执行，beforeExecute(Thread, Runnable)取不到WorkItem，
+	 * 	因此首次运行时的beforeExecute、setRunning在这里完成
+	 *
+	 */
+	private final class AttemptTask extends MyFutureTask<Void> {
+		/** 第几次执行（从1开始）**/
+		private final int attemptNo;
+		/** 入队时间（System.nanoTime）**/
+		private final long enqueueNanos;
+		/** 运行异常 **/
+		private volatile Throwable error;
+
+		AttemptTask(WorkItem task, int attemptNo) {
+			super(new CallableAdapter<Void>(task, null));
+			this.attemptNo = attemptNo;
+			this.enqueueNanos = System.nanoTime();
+		}
+
+		@Override
+		public void run() {
+			if (isDone())
+				return;
+			long start = System.nanoTime();
+			WorkItemEvents.start(poolName, task, attemptNo, start - enqueueNanos);
+			if (!task.isBeforeExecuted) {
+				task.beforeExecute(Thread.currentThread());
+				task.setRunning();
+				task.isBeforeExecuted = true;
+			}
+			try {
+				super.run();
+			} finally {
+				WorkItemEvents.attemptEnd(poolName, task, attemptNo, System.nanoTime() - start, error, isCancelled());
+			}
+		}
+
+		@Override
+		protected void setException(Throwable t) {
+			error = t;
+			super.setException(t);
+		}
+	}
 }
@@ -95,6 +95,7 @@ public class MyScheduledThreadPoolExecutorManager {
 			size = DEFAULT_POOL_SIZE;
 		}
 		executor = new MyScheduledThreadPoolExecutor(size, size, 0L, timeUnit, new LinkedBlockingQueue<WorkItem>());
+		executor.setPoolName(name);
 	}
 	/**
 	 * 重设线程池大小
@@ -1,15 +1,29 @@
 package com.ly.thread;
 
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 /**
  * 同程线程池管理器
  *
  *
  */
-public class MyThreadPoolExecutorManager {
+public class MyThreadPoolExecutorManager implements MyThreadPoolExecutorManagerMBean {
 	/**
 	 * 线程池容器
 	 */
@@ -18,6 +32,10 @@ public class MyThreadPoolExecutorManager {
 	 * 默认线程池大小
 	 */
 	private static final int DEFAULT_POOL_SIZE = 10;
+	/**
+	 * 按key串行执行的默认通道数
+	 */
+	private static final int DEFAULT_LANE_COUNT = 64;
 	/**
 	 * 以名称获得一个线程池管理器实例
 	 * @param name
@@ -34,15 +52,30 @@ public class MyThreadPoolExecutorManager {
 	 * @return
 	 */
 	public static MyThreadPoolExecutorManager getInstance(String name, int poolSize, boolean resetSize){
+		return getInstance(name, poolSize, resetSize, WorkQueueType.LINKED, -1);
+	}
+	/**
+	 * 以名称，线程池大小，是否重设线程池大小，线程队列类型，获得一个线程池管理器实例
+	 * 	线程队列类型仅在创建实例时生效
+	 * @param name 名称
+	 * @param poolSize 线程池大小
+	 * @param resetSize 是否重设线程池大小
+	 * @param queueType 线程队列类型
+	 * @param queueCapacity 线程队列容量，小于等于0表示默认容量；分片队列表示分片数
+	 * @return
+	 */
+	public static MyThreadPoolExecutorManager getInstance(String name, int poolSize, boolean resetSize,
+			WorkQueueType queueType, int queueCapacity){
 		MyThreadPoolExecutorManager instance = null;
 		if (threadsExecutors.containsKey(name)) {
 			instance = threadsExecutors.get(name);
 			if (resetSize)
 				instance.resetSize(poolSize);
 		} else {
-			instance = new MyThreadPoolExecutorManager(name, poolSize);
+			instance = new MyThreadPoolExecutorManager(name, poolSize, queueType, queueCapacity);
 			
 			threadsExecutors.put(name, instance);
+			instance.registerMBean();
 		}
 		return instance;
 	}
@@ -55,6 +88,30 @@ public class MyThreadPoolExecutorManager {
 	 * 线程池实例
 	 */
 	private TCThreadPoolExecutor executor;
+	/**
+	 * 按key串行执行的调度器（首次使用时创建）
+	 */
+	private volatile KeyOrderedDispatcher keyOrderedDispatcher;
+	/**
+	 * 结果缓存（为null表示未开启）
+	 */
+	private volatile ResultCache resultCache;
+	/**
+	 * 默认熔断器（为null表示未开启）
+	 */
+	private volatile CircuitBreaker circuitBreaker;
+	/**
+	 * 分组熔断器，按WorkItem.getTaskGroup()区分（为null表示未开启分组熔断）
+	 */
+	private volatile ConcurrentMap<String, CircuitBreaker> groupCircuitBreakers;
+	/**
+	 * 共享任务队列的领取者
+	 */
+	private volatile SharedQueueConsumer sharedQueueConsumer;
+	/**
+	 * 共享任务队列的任务编码
+	 */
+	private volatile SharedTaskCodec sharedTaskCodec;
 	
 	/**
 	 * 空构造
@@ -77,6 +134,25 @@ public class MyThreadPoolExecutorManager {
 		this.name = name;
 		generateExecutor(poolSize);
 	}
+	/**
+	 * 名称，线程池大小，线程队列类型 构造器
+	 * @param name 名称
+	 * @param poolSize 线程池大小
+	 * @param queueType 线程队列类型
+	 * @param queueCapacity 线程队列容量
+	 */
+	private MyThreadPoolExecutorManager(String name, int poolSize, WorkQueueType queueType, int queueCapacity){
+		this.name = name;
+		if (queueType == null || queueType == WorkQueueType.LINKED && queueCapacity <= 0) {
+			generateExecutor(poolSize);
+		} else {
+			if (poolSize <= 0) {
+				poolSize = DEFAULT_POOL_SIZE;
+			}
+			executor = new TCThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS, queueType, queueCapacity);
+			executor.setPoolName(name);
+		}
+	}
 	
 	/**
 	 * 生成一个线程池
@@ -95,6 +171,7 @@ public class MyThreadPoolExecutorManager {
 			size = DEFAULT_POOL_SIZE;
 		}
 		executor = new TCThreadPoolExecutor(size, size, 0L, timeUnit, new LinkedBlockingQueue<WorkItem>());
+		executor.setPoolName(name);
 	}
 	/**
 	 * 重设线程池大小
@@ -104,8 +181,38 @@ public class MyThreadPoolExecutorManager {
 		if (size <= 0) {
 			size = DEFAULT_POOL_SIZE;
 		}
-		executor.setCorePoolSize(size);
-		executor.setMaximumPoolSize(size);
+		executor.resize(size);
+	}
+	/**
+	 * JMX名称
+	 * @return
+	 * @throws JMException
+	 */
+	private ObjectName objectName() throws JMException {
+		return new ObjectName("com.ly.thread:type=MyThreadPoolExecutorManager,name=" + ObjectName.quote(name));
+	}
+	/**
+	 * 注册JMX，失败不影响线程池使用
+	 */
+	private void registerMBean(){
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName objectName = objectName();
+			if (server.isRegistered(objectName))
+				server.unregisterMBean(objectName);
+			server.registerMBean(this, objectName);
+		} catch (JMException e) {}
+	}
+	/**
+	 * 注销JMX
+	 */
+	private void unregisterMBean(){
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName objectName = objectName();
+			if (server.isRegistered(objectName))
+				server.unregisterMBean(objectName);
+		} catch (JMException e) {}
 	}
 	
 	/**
@@ -113,8 +220,326 @@ public class MyThreadPoolExecutorManager {
 	 * @param task 任务
 	 */
 	public void doExecute(WorkItem task){
+		ResultCache cache = resultCache;
+		if (cache != null && task != null) {
+			final Object key = task.getCacheKey();
+			if (key != null && completeFromCache(cache, key, task))
+				return;
+			if (key != null) {
+				task.addCompletionListener((WorkItem w) -> {
+					if (w.isSuccess())
+						cache.put(key, w instanceof CallableWorkItem ? ((CallableWorkItem<?>) w).getResult() : null);
+				});
+			}
+		}
+		LoadShedder shedder = task == null ? null : executor.loadShedder;
+		if (shedder != null && !shedder.tryAdmit(task, executor.getQueue().isEmpty())) {
+			if (!task.isReady()) {
+				throw new RuntimeException("task的状态不是STATUS_READY，拒绝运行");
+			}
+			task.setRunning();
+			task.setOver(new RejectedExecutionException("线程池" + name + "过载，任务被丢弃"));
+			return;
+		}
+		final CircuitBreaker breaker = task == null ? null : getCircuitBreaker(task.getTaskGroup());
+		if (breaker != null) {
+			if (!task.isReady()) {
+				throw new RuntimeException("task的状态不是STATUS_READY，拒绝运行");
+			}
+			final long permit = breaker.tryAcquire();
+			if (permit < 0L) {
+				task.setRunning();
+				task.setOver(new CircuitBreakerOpenException("线程池" + name + "的熔断器" + breaker.getName() + "已打开，任务快速失败"));
+				return;
+			}
+			try {
+				executor.doExecute(task);
+			} catch (RuntimeException e) {
+				//被拒绝的任务由调用方结束，不计入熔断结果
+				breaker.release(permit);
+				throw e;
+			}
+			//提交成功后再监听结果（已结束时立即回调），被拒绝的任务不会再以失败结果占用许可
+			task.addCompletionListener((WorkItem w) -> breaker.onResult(permit, w.isError()));
+			return;
+		}
 		executor.doExecute(task);
 	}
+	/**
+	 * 设置租户权重，仅线程队列类型为WorkQueueType.FAIR时可用
+	 * @param tenant 租户，与WorkItem.getTenant()对应
+	 * @param weight 权重，权重为2的租户每轮可执行2个任务
+	 */
+	public void setTenantWeight(String tenant, int weight){
+		if (!(executor.getQueue() instanceof FairWorkQueue))
+			throw new IllegalStateException("线程池" + name + "的线程队列类型不是FAIR");
+		((FairWorkQueue) executor.getQueue()).setWeight(tenant, weight);
+	}
+	/**
+	 * 开启按任务类的CPU时间、内存分配统计，已开启时返回原有统计
+	 * @return 任务统计
+	 */
+	public synchronized TaskProfiler enableTaskProfiling(){
+		TaskProfiler profiler = executor.profiler;
+		if (profiler == null)
+			executor.profiler = profiler = new TaskProfiler();
+		return profiler;
+	}
+	/**
+	 * 关闭任务统计
+	 */
+	public synchronized void disableTaskProfiling(){
+		executor.profiler = null;
+	}
+	/**
+	 * 任务统计
+	 * @return 未开启时返回null
+	 */
+	public TaskProfiler getTaskProfiler(){
+		return executor.profiler;
+	}
+	/**
+	 * 开启负载保护：队列等待时间持续高于目标值时丢弃新任务，被丢弃的任务以RejectedExecutionException结束
+	 * 	重复调用会替换原有配置
+	 * @param target 目标等待时间
+	 * @param interval 检查区间
+	 * @param unit 时间单位
+	 * @param mode 丢弃模式
+	 * @return 负载保护（可获取过载状态、丢弃数）
+	 */
+	public LoadShedder enableLoadShedding(long target, long interval, TimeUnit unit, LoadShedder.Mode mode){
+		LoadShedder shedder = new LoadShedder(target, interval, unit, mode);
+		executor.loadShedder = shedder;
+		return shedder;
+	}
+	/**
+	 * 关闭负载保护
+	 */
+	public void disableLoadShedding(){
+		executor.loadShedder = null;
+	}
+	/**
+	 * 负载保护
+	 * @return 未开启时返回null
+	 */
+	public LoadShedder getLoadShedder(){
+		return executor.loadShedder;
+	}
+	/**
+	 * 开启卡住任务看门狗，重复调用会替换原有看门狗
+	 * @param threshold 运行时间阈值，小于等于0表示不使用
+	 * @param unit 时间单位
+	 * @param typicalMultiple 超过同类任务典型运行时间的倍数即视为卡住，小于等于0表示不使用
+	 * @param policy 处理策略
+	 * @param listener 监听器（回调中可获取执行线程的栈），可为null
+	 * @return 看门狗
+	 */
+	public synchronized StuckTaskWatchdog enableStuckTaskWatchdog(long threshold, TimeUnit unit, double typicalMultiple,
+			StuckTaskWatchdog.Policy policy, StuckTaskListener listener){
+		StuckTaskWatchdog watchdog = new StuckTaskWatchdog(executor, threshold, unit, typicalMultiple, policy, listener);
+		StuckTaskWatchdog old = executor.watchdog;
+		executor.watchdog = watchdog;
+		if (old != null)
+			old.stop();
+		return watchdog;
+	}
+	/**
+	 * 关闭卡住任务看门狗
+	 */
+	public synchronized void disableStuckTaskWatchdog(){
+		StuckTaskWatchdog old = executor.watchdog;
+		executor.watchdog = null;
+		if (old != null)
+			old.stop();
+	}
+	/**
+	 * 卡住任务看门狗
+	 * @return 未开启时返回null
+	 */
+	public StuckTaskWatchdog getStuckTaskWatchdog(){
+		return executor.watchdog;
+	}
+	/**
+	 * 接入同一台机器上多个进程共享的任务队列，本进程线程池空闲时领取其中的任务执行，
+	 * 	同时领取未结束的任务不超过线程池最大线程数，重复调用会替换原有队列
+	 * @param queue 共享任务队列（由调用方关闭）
+	 * @param codec 任务编码
+	 * @return 领取者
+	 */
+	public SharedQueueConsumer attachSharedQueue(SharedWorkQueue queue, SharedTaskCodec codec){
+		return attachSharedQueue(queue, codec, executor.getMaximumPoolSize());
+	}
+	/**
+	 * 接入共享任务队列，重复调用会替换原有队列
+	 * @param queue 共享任务队列（由调用方关闭）
+	 * @param codec 任务编码
+	 * @param maxClaimed 本进程最多领取未结束的任务数
+	 * @return 领取者
+	 */
+	public synchronized SharedQueueConsumer attachSharedQueue(SharedWorkQueue queue, SharedTaskCodec codec, int maxClaimed){
+		SharedQueueConsumer consumer = new SharedQueueConsumer(this, queue, codec, maxClaimed);
+		detachSharedQueue();
+		sharedTaskCodec = codec;
+		sharedQueueConsumer = consumer;
+		consumer.start();
+		return consumer;
+	}
+	/**
+	 * 停止领取共享任务队列中的任务，已领取的任务继续执行
+	 */
+	public synchronized void detachSharedQueue(){
+		SharedQueueConsumer old = sharedQueueConsumer;
+		sharedQueueConsumer = null;
+		sharedTaskCodec = null;
+		if (old != null)
+			old.stop();
+	}
+	/**
+	 * 共享任务队列的领取者
+	 * @return 未接入时返回null
+	 */
+	public SharedQueueConsumer getSharedQueueConsumer(){
+		return sharedQueueConsumer;
+	}
+	/**
+	 * 把任务编码后放入共享任务队列，由任一接入该队列的进程执行（至少执行一次），本进程中的task对象不会被执行
+	 * @param task 线程任务
+	 * @throws RejectedExecutionException 共享任务队列已满或读写失败
+	 */
+	public void doExecuteShared(WorkItem task){
+		SharedQueueConsumer consumer = sharedQueueConsumer;
+		SharedTaskCodec codec = sharedTaskCodec;
+		if (consumer == null || codec == null)
+			throw new IllegalStateException("线程池" + name + "未接入共享任务队列");
+		try {
+			if (!consumer.getQueue().offer(codec.encode(task)))
+				throw new RejectedExecutionException("共享任务队列已满");
+		} catch (IOException e) {
+			throw new RejectedExecutionException(e);
+		}
+	}
+	/**
+	 * 开启熔断
+	 * @param windowSize 滑动窗口大小（任务数）
+	 * @param minimumCalls 计算失败率所需的最少任务数
+	 * @param failureRateThreshold 失败率阈值（运行错误和超时都记为失败），如0.5
+	 * @param openTime 熔断时长，之后放行探测任务；探测任务在此时长内没有结果视为失败
+	 * @param unit 时间单位
+	 * @param halfOpenProbes 探测任务数
+	 * @param perTaskGroup 是否按WorkItem.getTaskGroup()分组熔断
+	 * @return 默认熔断器
+	 */
+	public CircuitBreaker enableCircuitBreaker(int windowSize, int minimumCalls, double failureRateThreshold,
+			long openTime, TimeUnit unit, int halfOpenProbes, boolean perTaskGroup){
+		CircuitBreaker breaker = new CircuitBreaker(name, windowSize, minimumCalls, failureRateThreshold,
+				openTime, unit, halfOpenProbes);
+		this.groupCircuitBreakers = perTaskGroup ? new ConcurrentHashMap<String, CircuitBreaker>() : null;
+		this.circuitBreaker = breaker;
+		return breaker;
+	}
+	/**
+	 * 关闭熔断
+	 */
+	public void disableCircuitBreaker(){
+		this.circuitBreaker = null;
+		this.groupCircuitBreakers = null;
+	}
+	/**
+	 * 获取任务分组对应的熔断器
+	 * @param taskGroup 任务分组，为null时返回默认熔断器
+	 * @return 未开启熔断时返回null
+	 */
+	public CircuitBreaker getCircuitBreaker(String taskGroup){
+		CircuitBreaker breaker = circuitBreaker;
+		ConcurrentMap<String, CircuitBreaker> groups = groupCircuitBreakers;
+		if (breaker == null || groups == null || taskGroup == null)
+			return breaker;
+		CircuitBreaker groupBreaker = groups.get(taskGroup);
+		if (groupBreaker == null) {
+			groups.putIfAbsent(taskGroup, breaker.copy(name + "-" + taskGroup));
+			groupBreaker = groups.get(taskGroup);
+		}
+		return groupBreaker;
+	}
+	/**
+	 * 命中缓存时直接以缓存结果成功结束任务
+	 * @param cache 结果缓存
+	 * @param key 缓存key
+	 * @param task 任务
+	 * @return 是否命中
+	 */
+	private boolean completeFromCache(ResultCache cache, Object key, WorkItem task){
+		if (!task.isReady()) {
+			throw new RuntimeException("task的状态不是STATUS_READY，拒绝运行");
+		}
+		ResultCache.Entry e = cache.get(key);
+		if (e == null)
+			return false;
+		task.setRunning();
+		if (task instanceof CallableWorkItem)
+			((CallableWorkItem<?>) task).setResult(e.value);
+		task.setOver(null);
+		return true;
+	}
+	/**
+	 * 开启结果缓存，重复调用会替换原有缓存
+	 * @param maxSize 最大缓存数
+	 * @param ttl 存活时间
+	 * @param unit 时间单位
+	 * @return 结果缓存（可获取命中、未命中、淘汰次数）
+	 */
+	public ResultCache enableResultCache(int maxSize, long ttl, TimeUnit unit){
+		ResultCache cache = new ResultCache(maxSize, ttl, unit);
+		this.resultCache = cache;
+		return cache;
+	}
+	/**
+	 * 关闭结果缓存
+	 */
+	public void disableResultCache(){
+		this.resultCache = null;
+	}
+	/**
+	 * 结果缓存
+	 * @return 未开启时返回null
+	 */
+	public ResultCache getResultCache(){
+		return resultCache;
+	}
+	/**
+	 * 执行单个任务，运行完毕后回调listener
+	 * @param task 任务
+	 * @param listener 完成回调
+	 */
+	public void doExecute(WorkItem task, WorkItemListener listener){
+		task.addCompletionListener(listener);
+		this.doExecute(task);
+	}
+	/**
+	 * 按业务key执行单个任务：相同key的任务按提交顺序串行执行，不同key的任务并行执行
+	 * @param key 业务key，如账户ID
+	 * @param task 任务
+	 */
+	public void doExecute(Object key, WorkItem task){
+		KeyOrderedDispatcher dispatcher = keyOrderedDispatcher;
+		if (dispatcher == null) {
+			synchronized (this) {
+				dispatcher = keyOrderedDispatcher;
+				if (dispatcher == null)
+					keyOrderedDispatcher = dispatcher = new KeyOrderedDispatcher(this, DEFAULT_LANE_COUNT);
+			}
+		}
+		dispatcher.dispatch(key, task);
+	}
+	/**
+	 * 执行有返回值的任务
+	 * @param task 任务
+	 * @return 运行结果的Future
+	 */
+	public <V> CompletableFuture<V> submit(CallableWorkItem<V> task){
+		this.doExecute(task);
+		return task.getFuture();
+	}
 	/**
 	 * 执行不定个数任务
 	 * @param task 任务（集）
@@ -137,6 +562,82 @@ public class MyThreadPoolExecutorManager {
 			this.doExecute(w);
 		}
 	}
+	/**
+	 * 执行多个任务，并按完成顺序返回
+	 * 	提交被拒绝的任务以拒绝异常结束，同样从任务流中取出，不影响其余任务的提交
+	 * @param tasks 任务集
+	 * @return 完成顺序的任务流
+	 */
+	public WorkItemCompletionStream doExecuteForCompletion(Collection<? extends WorkItem> tasks){
+		if (tasks == null)
+			throw new IllegalArgumentException("参数为null");
+		WorkItemCompletionStream stream = new WorkItemCompletionStream(tasks.size());
+		for (WorkItem w : tasks) {
+			try {
+				this.doExecute(w, stream);
+			} catch (RuntimeException e) {
+				if (w.isReady()) {
+					w.setRunning();
+					w.setOver(e);
+				}
+			}
+		}
+		return stream;
+	}
+	/**
+	 * 流式执行：从Iterator逐个取出任务执行，同时在途的任务不超过maxInFlight个，有任务结束才取下一个
+	 * @param source 任务来源（只由提交线程访问）
+	 * @param maxInFlight 最大在途任务数
+	 * @param listener 每个任务结束时的回调，可为null
+	 * @return 可等待、取消的任务批
+	 */
+	public StreamingJob doExecuteStreaming(Iterator<? extends WorkItem> source, int maxInFlight, WorkItemListener listener){
+		StreamingJob job = new StreamingJob(this, source, maxInFlight, listener);
+		job.start();
+		return job;
+	}
+	/**
+	 * 流式执行：从Stream逐个取出任务执行
+	 * @param source 任务来源
+	 * @param maxInFlight 最大在途任务数
+	 * @param listener 每个任务结束时的回调，可为null
+	 * @return 可等待、取消的任务批
+	 */
+	public StreamingJob doExecuteStreaming(Stream<? extends WorkItem> source, int maxInFlight, WorkItemListener listener){
+		if (source == null)
+			throw new IllegalArgumentException("参数为null");
+		return doExecuteStreaming(source.iterator(), maxInFlight, listener);
+	}
+	/**
+	 * 流式执行：从supplier逐个取得任务执行，返回null表示结束
+	 * @param source 任务来源
+	 * @param maxInFlight 最大在途任务数
+	 * @param listener 每个任务结束时的回调，可为null
+	 * @return 可等待、取消的任务批
+	 */
+	public StreamingJob doExecuteStreaming(final Supplier<? extends WorkItem> source, int maxInFlight, WorkItemListener listener){
+		if (source == null)
+			throw new IllegalArgumentException("参数为null");
+		return doExecuteStreaming(new Iterator<WorkItem>() {
+			private WorkItem next;
+
+			@Override
+			public boolean hasNext() {
+				if (next == null)
+					next = source.get();
+				return next != null;
+			}
+
+			@Override
+			public WorkItem next() {
+				if (!hasNext())
+					throw new NoSuchElementException();
+				WorkItem w = next;
+				next = null;
+				return w;
+			}
+		}, maxInFlight, listener);
+	}
 	/**
 	 * 关闭线程池，线程池关闭后线程池容器将销毁该管理器实例
 	 */
@@ -150,6 +651,9 @@ public class MyThreadPoolExecutorManager {
 			}
 		} finally {
 			threadsExecutors.remove(this.name);
+			unregisterMBean();
+			disableStuckTaskWatchdog();
+			detachSharedQueue();
 		}
 	}
 	/**
@@ -167,6 +671,9 @@ public class MyThreadPoolExecutorManager {
 			}
 		} finally {
 			threadsExecutors.remove(this.name);
+			unregisterMBean();
+			disableStuckTaskWatchdog();
+			detachSharedQueue();
 		}
 	}
 
@@ -174,17 +681,135 @@ public class MyThreadPoolExecutorManager {
 	 * 当前线程池中实际在运行的线程数目
 	 * @return
 	 */
+	@Override
 	public int getActiveThreadCount() {
 		return executor.getActiveCount();
 	}
 	
+	@Override
 	public String getName() {
 		return name;
 	}
+
+	@Override
+	public int getQueueDepth() {
+		return executor.getQueue().size();
+	}
+
+	/**
+	 * 当前线程池中的线程数目
+	 * @return
+	 */
+	@Override
+	public int getThreadCount() {
+		return executor.getPoolSize();
+	}
+
+	@Override
+	public int getLargestThreadCount() {
+		return executor.getLargestPoolSize();
+	}
+
+	@Override
+	public int getCorePoolSize() {
+		return executor.getCorePoolSize();
+	}
+
+	@Override
+	public long getCompletedTaskCount() {
+		return executor.succeededCount.get();
+	}
+
+	@Override
+	public long getFailedTaskCount() {
+		return executor.failedCount.get();
+	}
+
+	@Override
+	public long getRetriedCount() {
+		return executor.retriedCount.get();
+	}
+
+	@Override
+	public long getTimedOutCount() {
+		return executor.timedOutCount.get();
+	}
+
+	@Override
+	public long getLatencyP50() {
+		return executor.latencyRecorder.percentile(0.5D);
+	}
+
+	@Override
+	public long getLatencyP90() {
+		return executor.latencyRecorder.percentile(0.9D);
+	}
+
+	@Override
+	public long getLatencyP99() {
+		return executor.latencyRecorder.percentile(0.99D);
+	}
+
+	@Override
+	public long getLatencyP999() {
+		return executor.latencyRecorder.percentile(0.999D);
+	}
+
+	@Override
+	public long getShedCount() {
+		LoadShedder shedder = executor.loadShedder;
+		return shedder == null ? 0L : shedder.getShedCount();
+	}
+
+	@Override
+	public long getStuckTaskCount() {
+		StuckTaskWatchdog watchdog = executor.watchdog;
+		return watchdog == null ? 0L : watchdog.getStuckCount();
+	}
+
+	@Override
+	public int getZombieAttemptCount() {
+		return executor.zombieCount.get();
+	}
+
+	@Override
+	public long getDeferredRetryCount() {
+		return executor.deferredRetryCount.get();
+	}
+
+	@Override
+	public boolean isPaused() {
+		return executor.isPaused();
+	}
+
+	@Override
+	public void resize(int size) {
+		resetSize(size);
+	}
+
+	@Override
+	public void pause() {
+		executor.pause();
+	}
+
+	@Override
+	public void resume() {
+		executor.resume();
+	}
+
+	@Override
+	public boolean drain(long timeoutMillis) {
+		try {
+			return executor.awaitQuiescence(timeoutMillis, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
 	
 	public static void main(String[] args) {
-		List<WorkItem> wis = new ArrayList<WorkItem>();
-		for (int i = 0; i < 10000; i++) {
+		//按需创建任务，同时在途的任务不超过1000个
+		Stream<WorkItem> wis = IntStream.range(0, 10000).mapToObj((int i) -> {
 			WorkItem wi1 = new WorkItem(0){
 				@Override
 				public void beforeExecute(Thread t) {
@@ -208,8 +833,8 @@ public class MyThreadPoolExecutorManager {
 					System.out.println(this.getName() + "执行成功~");
 				}
 			};
-			wis.add(wi1);
-		}
+			return wi1;
+		});
 		/*for (int i = 0; i < 100; i++) {
 			WorkItem wi2 = new WorkItem(0, 1000){
 				int count = 1;
@@ -245,16 +870,18 @@ public class MyThreadPoolExecutorManager {
 		}*/
 		long now = System.currentTimeMillis();
 		MyThreadPoolExecutorManager manager = MyThreadPoolExecutorManager.getInstance("pool3test");
-		manager.doExecute(wis);
-		manager.shutdown();
-		boolean flag = true;
-		for (WorkItem w : wis) {
-			if (w.isError()) {
-				flag = false;
-				break;
-			}
+		final AtomicBoolean failed = new AtomicBoolean(false);
+		WorkItemListener listener = (WorkItem w) -> {
+			if (w.isError())
+				failed.set(true);
+		};
+		try {
+			manager.doExecuteStreaming(wis, 1000, listener).await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
 		}
-		if (flag) {
+		manager.shutdown();
+		if (!failed.get()) {
 			System.out.println("程序执行成功，耗时" + (System.currentTimeMillis() - now) + "毫秒");
 		} else {
 			System.out.println("程序执行失败，耗时" + (System.currentTimeMillis() - now) + "毫秒");
@@ -0,0 +1,98 @@
+package com.ly.thread;
+
+/**
+ * 线程池管理器的JMX接口
+ * 	每个线程池管理器创建时注册为com.ly.thread:type=MyThreadPoolExecutorManager,name=名称，关闭时注销；
+ * 	耗时分位数只统计成功的执行（毫秒，样本不足时为-1）
+ *
+ */
+public interface MyThreadPoolExecutorManagerMBean {
+	String getName();
+
+	/**
+	 * 队列中等待的执行数
+	 * @return
+	 */
+	int getQueueDepth();
+
+	int getActiveThreadCount();
+
+	int getThreadCount();
+
+	int getLargestThreadCount();
+
+	int getCorePoolSize();
+
+	/**
+	 * 成功结束的任务数
+	 * @return
+	 */
+	long getCompletedTaskCount();
+
+	/**
+	 * 失败结束的任务数（包括超时、取消）
+	 * @return
+	 */
+	long getFailedTaskCount();
+
+	long getRetriedCount();
+
+	long getTimedOutCount();
+
+	/**
+	 * 负载保护丢弃的任务数，未开启时为0
+	 * @return
+	 */
+	long getShedCount();
+
+	/**
+	 * 看门狗发现的卡住任务数，未开启时为0
+	 * @return
+	 */
+	long getStuckTaskCount();
+
+	/**
+	 * 已被取消（超时、对冲落败等）但仍在运行的执行数，这些执行仍占用线程
+	 * @return
+	 */
+	int getZombieAttemptCount();
+
+	/**
+	 * 因上一次执行仍在运行而推迟的重试数
+	 * @return
+	 */
+	long getDeferredRetryCount();
+
+	long getLatencyP50();
+
+	long getLatencyP90();
+
+	long getLatencyP99();
+
+	long getLatencyP999();
+
+	boolean isPaused();
+
+	/**
+	 * 调整线程池大小
+	 * @param size 线程池大小
+	 */
+	void resize(int size);
+
+	/**
+	 * 暂停派发，已在运行的任务不受影响
+	 */
+	void pause();
+
+	/**
+	 * 恢复派发
+	 */
+	void resume();
+
+	/**
+	 * 等待队列中和运行中的任务全部结束，不关闭线程池；暂停中不会结束
+	 * @param timeoutMillis 最长等待毫秒数
+	 * @return 是否已全部结束
+	 */
+	boolean drain(long timeoutMillis);
+}
@@ -0,0 +1,37 @@
+package com.ly.thread;
+
+/**
+ * 有界的无锁对象池
+ * 	以MpmcArrayBlockingQueue保存空闲对象：任意线程放回、任意线程取出，取、放都不分配对象；
+ * 	取不到时由调用方新建，池满时放不回的对象交给GC
+ *
+ * @param <T>
+ */
+final class RecyclingPool<T> {
+	/** 空闲对象 **/
+	private final MpmcArrayBlockingQueue<T> free;
+
+	/**
+	 * 构造器
+	 * @param capacity 容量，会向上取整为2的幂
+	 */
+	RecyclingPool(int capacity) {
+		this.free = new MpmcArrayBlockingQueue<T>(capacity);
+	}
+
+	/**
+	 * 取出一个对象
+	 * @return 没有可用对象时返回null
+	 */
+	T acquire() {
+		return free.poll();
+	}
+
+	/**
+	 * 放回一个对象
+	 * @param t 已重置的对象
+	 */
+	void release(T t) {
+		free.offer(t);
+	}
+}
@@ -0,0 +1,146 @@
+package com.ly.thread;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 幂等任务的结果缓存
+ * 	按WorkItem.getCacheKey()缓存运行成功的结果，超过ttl过期，超过maxSize时淘汰最久未使用的结果。
+ * 	过期的结果在查找时清除，每次保存时也从最久未使用的一端清除少量过期结果，保存的开销与缓存大小无关
+ *
+ */
+public class ResultCache {
+	/** 每次保存时最多检查的过期结果数 **/
+	private static final int EXPIRE_SCAN = 4;
+	/** 最大缓存数 **/
+	private final int maxSize;
+	/** 存活时间（纳秒）**/
+	private final long ttlNanos;
+	/** 缓存，按访问顺序排列 **/
+	private final LinkedHashMap<Object, Entry> entries;
+	/** 命中次数 **/
+	private final AtomicLong hitCount = new AtomicLong();
+	/** 未命中次数 **/
+	private final AtomicLong missCount = new AtomicLong();
+	/** 淘汰次数（包括过期和容量淘汰）**/
+	private final AtomicLong evictionCount = new AtomicLong();
+
+	/**
+	 * 构造器
+	 * @param maxSize 最大缓存数
+	 * @param ttl 存活时间
+	 * @param unit 时间单位
+	 */
+	public ResultCache(int maxSize, long ttl, TimeUnit unit) {
+		if (maxSize <= 0)
+			throw new IllegalArgumentException("maxSize必须大于0");
+		if (ttl <= 0L)
+			throw new IllegalArgumentException("ttl必须大于0");
+		this.maxSize = maxSize;
+		this.ttlNanos = unit.toNanos(ttl);
+		this.entries = new LinkedHashMap<Object, Entry>(16, 0.75F, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Object, ResultCache.Entry> eldest) {
+				if (size() <= ResultCache.this.maxSize)
+					return false;
+				evictionCount.incrementAndGet();
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * 查找缓存
+	 * @param key 缓存key
+	 * @return 缓存项，未命中时返回null
+	 */
+	Entry get(Object key) {
+		Entry e;
+		synchronized (entries) {
+			e = entries.get(key);
+			if (e != null && e.expireAt - System.nanoTime() <= 0L) {
+				entries.remove(key);
+				evictionCount.incrementAndGet();
+				e = null;
+			}
+		}
+		if (e == null) {
+			missCount.incrementAndGet();
+		} else {
+			hitCount.incrementAndGet();
+		}
+		return e;
+	}
+
+	/**
+	 * 保存结果
+	 * @param key 缓存key
+	 * @param value 结果（可为null）
+	 */
+	void put(Object key, Object value) {
+		Entry e = new Entry(value, System.nanoTime() + ttlNanos);
+		synchronized (entries) {
+			evictExpired();
+			entries.put(key, e);
+		}
+	}
+
+	/**
+	 * 从最久未使用的一端清除最多EXPIRE_SCAN个过期结果，遇到未过期的即停止，调用方需持有entries的锁
+	 */
+	private void evictExpired() {
+		long now = System.nanoTime();
+		Iterator<Entry> it = entries.values().iterator();
+		for (int i = 0; i < EXPIRE_SCAN && it.hasNext(); i++) {
+			if (it.next().expireAt - now > 0L)
+				return;
+			it.remove();
+			evictionCount.incrementAndGet();
+		}
+	}
+
+	/**
+	 * 清空缓存
+	 */
+	public void clear() {
+		synchronized (entries) {
+			entries.clear();
+		}
+	}
+
+	public int size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	public long getEvictionCount() {
+		return evictionCount.get();
+	}
+
+	/**
+	 * 缓存项
+	 */
+	static final class Entry {
+		final Object value;
+		final long expireAt;
+
+		Entry(Object value, long expireAt) {
+			this.value = value;
+			this.expireAt = expireAt;
+		}
+	}
+}
@@ -0,0 +1,278 @@
+package com.ly.thread;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 分片任务队列
+ * 	队列拆分为N个无锁分片，每个线程（提交线程和工作线程）绑定一个本地分片：
+ * 	提交时放入本地分片（或按任务hash选择分片），工作线程优先取本地分片，本地为空时从其他分片窃取，
+ * 	全部为空时先自旋再挂起。提交线程之间不再竞争同一个队列头尾，元素数用LongAdder统计，也不共享同一个计数器
+ *
+ */
+public class ShardedWorkQueue extends AbstractQueue<Runnable> implements BlockingQueue<Runnable> {
+	/**
+	 * 提交时的分片选择方式
+	 *
+	 */
+	public static enum Routing {
+		/** 按提交线程选择分片 **/
+		THREAD,
+		/** 按WorkItem的hash选择分片，同一个任务的重试进入同一个分片 **/
+		HASH
+	}
+	/** 挂起前的自旋次数 **/
+	private static final int SPIN_TRIES = 64;
+
+	/** 分片 **/
+	private final Queue<Runnable>[] shards;
+	/** 分片选择方式 **/
+	private final Routing routing;
+	/** 线程绑定的分片 **/
+	private final ThreadLocal<Integer> localShard;
+	/** 分片分配计数 **/
+	private final AtomicInteger shardAssigner = new AtomicInteger();
+	/** 元素总数（近似值，仅用于size()）**/
+	private final LongAdder count = new LongAdder();
+	/** 挂起等待的锁，仅在有线程挂起时使用 **/
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition notEmpty = lock.newCondition();
+	/** 挂起等待的消费者数 **/
+	private final AtomicInteger waitingConsumers = new AtomicInteger();
+	/** 窃取次数 **/
+	private final AtomicInteger stealCount = new AtomicInteger();
+
+	/**
+	 * 构造器
+	 * @param shardCount 分片数，小于等于0表示CPU核数
+	 * @param routing 分片选择方式
+	 */
+	public ShardedWorkQueue(int shardCount, Routing routing) {
+		if (shardCount <= 0)
+			shardCount = Runtime.getRuntime().availableProcessors();
+		this.routing = routing == null ? Routing.THREAD : routing;
+		//不能直接创建泛型数组，数组只保存Queue<Runnable>
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		Queue<Runnable>[] array = (Queue<Runnable>[]) new Queue[shardCount];
+		this.shards = array;
+		for (int i = 0; i < shardCount; i++) {
+			shards[i] = new ConcurrentLinkedQueue<Runnable>();
+		}
+		final int n = shardCount;
+		this.localShard = new ThreadLocal<Integer>() {
+			@Override
+			protected Integer initialValue() {
+				return (shardAssigner.getAndIncrement() & Integer.MAX_VALUE) % n;
+			}
+		};
+	}
+
+	/**
+	 * 选择提交的分片
+	 */
+	private int shardFor(Runnable r) {
+		if (routing == Routing.HASH) {
+			Object key = r instanceof WorkItemAttempt ? ((WorkItemAttempt) r).task
+					: r instanceof MyFutureTask ? ((MyFutureTask<?>) r).task : r;
+			int h = System.identityHashCode(key);
+			h ^= (h >>> 16);
+			return (h & Integer.MAX_VALUE) % shards.length;
+		}
+		return localShard.get();
+	}
+
+	@Override
+	public boolean offer(Runnable r) {
+		if (r == null)
+			throw new NullPointerException();
+		shards[shardFor(r)].offer(r);
+		count.increment();
+		if (waitingConsumers.get() > 0) {
+			lock.lock();
+			try {
+				notEmpty.signal();
+			} finally {
+				lock.unlock();
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public Runnable poll() {
+		int home = localShard.get();
+		Runnable r = shards[home].poll();
+		if (r == null) {
+			for (int i = 1; i < shards.length && r == null; i++) {
+				r = shards[(home + i) % shards.length].poll();
+			}
+			if (r != null)
+				stealCount.incrementAndGet();
+		}
+		if (r != null)
+			count.decrement();
+		return r;
+	}
+
+	@Override
+	public Runnable peek() {
+		int home = localShard.get();
+		for (int i = 0; i < shards.length; i++) {
+			Runnable r = shards[(home + i) % shards.length].peek();
+			if (r != null)
+				return r;
+		}
+		return null;
+	}
+
+	@Override
+	public void put(Runnable r) {
+		offer(r);
+	}
+
+	@Override
+	public boolean offer(Runnable r, long timeout, TimeUnit unit) {
+		return offer(r);
+	}
+
+	@Override
+	public Runnable take() throws InterruptedException {
+		return poll(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+	}
+
+	@Override
+	public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException {
+		Runnable r = poll();
+		if (r != null)
+			return r;
+		long nanos = unit.toNanos(timeout);
+		long now = System.nanoTime();
+		long deadline = nanos >= Long.MAX_VALUE - now ? Long.MAX_VALUE : now + nanos;
+		for (int i = 0; i < SPIN_TRIES; i++) {
+			if ((r = poll()) != null)
+				return r;
+		}
+		for (;;) {
+			if (Thread.interrupted())
+				throw new InterruptedException();
+			long remaining = deadline - System.nanoTime();
+			if (remaining <= 0L)
+				return null;
+			lock.lockInterruptibly();
+			try {
+				waitingConsumers.incrementAndGet();
+				try {
+					//检查分片本身而不是计数：入队先于计数，计数可能暂时小于实际元素数
+					if (isEmpty())
+						notEmpty.awaitNanos(remaining);
+				} finally {
+					waitingConsumers.decrementAndGet();
+				}
+			} finally {
+				lock.unlock();
+			}
+			if ((r = poll()) != null)
+				return r;
+		}
+	}
+
+	@Override
+	public int size() {
+		return (int) Math.max(0L, Math.min(count.sum(), Integer.MAX_VALUE));
+	}
+
+	@Override
+	public boolean isEmpty() {
+		for (Queue<Runnable> shard : shards) {
+			if (!shard.isEmpty())
+				return false;
+		}
+		return true;
+	}
+
+	@Override
+	public int remainingCapacity() {
+		return Integer.MAX_VALUE;
+	}
+
+	@Override
+	public boolean remove(Object o) {
+		for (Queue<Runnable> shard : shards) {
+			if (shard.remove(o)) {
+				count.decrement();
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public int drainTo(Collection<? super Runnable> c) {
+		return drainTo(c, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public int drainTo(Collection<? super Runnable> c, int maxElements) {
+		if (c == null)
+			throw new NullPointerException();
+		if (c == this)
+			throw new IllegalArgumentException();
+		int n = 0;
+		Runnable r;
+		while (n < maxElements && (r = poll()) != null) {
+			c.add(r);
+			n++;
+		}
+		return n;
+	}
+
+	/**
+	 * 弱一致性的快照迭代器，不支持remove
+	 */
+	@Override
+	public Iterator<Runnable> iterator() {
+		List<Runnable> snapshot = new ArrayList<Runnable>();
+		for (Queue<Runnable> shard : shards) {
+			snapshot.addAll(shard);
+		}
+		final Iterator<Runnable> it = snapshot.iterator();
+		return new Iterator<Runnable>() {
+			@Override
+			public boolean hasNext() {
+				return it.hasNext();
+			}
+
+			@Override
+			public Runnable next() {
+				return it.next();
+			}
+		};
+	}
+
+	/**
+	 * 分片数
+	 * @return
+	 */
+	public int getShardCount() {
+		return shards.length;
+	}
+
+	/**
+	 * 从其他分片窃取任务的次数
+	 * @return
+	 */
+	public int getStealCount() {
+		return stealCount.get();
+	}
+}
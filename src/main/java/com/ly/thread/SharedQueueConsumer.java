@@ -0,0 +1,203 @@
+package com.ly.thread;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 从共享任务队列领取任务交给本进程的线程池执行
+ * 	由独立的领取线程执行：本进程领取未结束的任务不超过maxClaimed个，线程池队列有积压时不领取，
+ * 	因此繁忙的进程把任务留给空闲的进程。任务结束（成功或错误）后交回领取线程确认；队列为空时轮询间隔从1毫秒逐步增加到最大间隔。
+ * 	领取线程定期检查进程表，恢复已退出进程领取未确认的任务。
+ * 	领取线程只做定时等待、不会被中断，停止时设置标记后由它自己退出：已领取的任务全部确认后才退出
+ *
+ */
+public class SharedQueueConsumer {
+	/** 最大轮询间隔（毫秒）**/
+	private static final long MAX_POLL_MILLIS = 10L;
+	/** 检查已退出进程的间隔（毫秒）**/
+	private static final long RECLAIM_MILLIS = 1000L;
+
+	/** 线程池管理器 **/
+	private final MyThreadPoolExecutorManager manager;
+	/** 共享任务队列 **/
+	private final SharedWorkQueue queue;
+	/** 任务编码 **/
+	private final SharedTaskCodec codec;
+	/** 本进程最多领取未结束的任务数 **/
+	private final int maxClaimed;
+	/** 已结束待确认的任务，由领取线程确认 **/
+	private final ConcurrentLinkedQueue<SharedWorkQueue.Claim> finished = new ConcurrentLinkedQueue<SharedWorkQueue.Claim>();
+	/** 已领取、已确认、解码失败的任务数 **/
+	private final AtomicLong claimed = new AtomicLong();
+	private final AtomicLong acked = new AtomicLong();
+	private final AtomicLong decodeFailed = new AtomicLong();
+	/** 领取线程 **/
+	private final Thread pump;
+	private volatile boolean stopped;
+	/** 最后一次队列读写异常 **/
+	private volatile Throwable lastError;
+
+	SharedQueueConsumer(MyThreadPoolExecutorManager manager, SharedWorkQueue queue, SharedTaskCodec codec, int maxClaimed) {
+		if (queue == null || codec == null)
+			throw new NullPointerException();
+		if (maxClaimed <= 0)
+			throw new IllegalArgumentException("maxClaimed必须大于0");
+		this.manager = manager;
+		this.queue = queue;
+		this.codec = codec;
+		this.maxClaimed = maxClaimed;
+		this.pump = new Thread(this::pump, "SharedQueueConsumer-" + manager.getName());
+		this.pump.setDaemon(true);
+	}
+
+	void start() {
+		pump.start();
+	}
+
+	/**
+	 * 领取线程
+	 */
+	private void pump() {
+		long idleMillis = 1L;
+		long nextReclaim = 0L;
+		//已领取未确认的任务数，只在领取线程中访问
+		int outstanding = 0;
+		//停止后等待已领取的任务确认完毕，队列已关闭时无法再确认
+		while (!stopped || outstanding > 0 && !queue.isClosed()) {
+			outstanding -= ackFinished();
+			if (stopped) {
+				LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(MAX_POLL_MILLIS));
+				continue;
+			}
+			long now = System.currentTimeMillis();
+			if (now >= nextReclaim) {
+				nextReclaim = now + RECLAIM_MILLIS;
+				try {
+					queue.reclaim();
+				} catch (IOException e) {
+					lastError = e;
+				}
+			}
+			if (outstanding >= maxClaimed || manager.getQueueDepth() > 0) {
+				LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(idleMillis));
+				continue;
+			}
+			SharedWorkQueue.Claim claim;
+			try {
+				claim = queue.claim();
+			} catch (IOException e) {
+				lastError = e;
+				claim = null;
+			}
+			if (claim == null) {
+				LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(idleMillis));
+				idleMillis = Math.min(idleMillis * 2L, MAX_POLL_MILLIS);
+				continue;
+			}
+			idleMillis = 1L;
+			claimed.incrementAndGet();
+			outstanding++;
+			execute(claim);
+		}
+	}
+
+	/**
+	 * 确认已结束的任务，在领取线程中执行
+	 * @return 确认的任务数
+	 */
+	private int ackFinished() {
+		int n = 0;
+		SharedWorkQueue.Claim claim;
+		while ((claim = finished.poll()) != null) {
+			n++;
+			try {
+				if (queue.ack(claim))
+					acked.incrementAndGet();
+			} catch (IOException e) {
+				lastError = e;
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * 任务结束，交回领取线程确认（完成回调所在的线程可能被中断，不在其中读写队列文件）
+	 * @param claim 领取的任务
+	 */
+	private void onFinished(SharedWorkQueue.Claim claim) {
+		finished.offer(claim);
+		LockSupport.unpark(pump);
+	}
+
+	/**
+	 * 解码并提交领取的任务
+	 * @param claim 领取的任务
+	 */
+	private void execute(final SharedWorkQueue.Claim claim) {
+		WorkItem task;
+		try {
+			task = codec.decode(claim.getDescriptor());
+			if (task == null)
+				throw new NullPointerException("decode()返回null");
+		} catch (RuntimeException e) {
+			//无法解码的任务描述重新领取也会失败，直接确认丢弃
+			decodeFailed.incrementAndGet();
+			lastError = e;
+			onFinished(claim);
+			return;
+		}
+		task.addCompletionListener((WorkItem w) -> onFinished(claim));
+		try {
+			manager.doExecute(task);
+		} catch (RuntimeException e) {
+			//提交被拒绝的任务以该异常结束，同样确认
+			if (task.isReady()) {
+				task.setRunning();
+				task.setOver(e);
+			}
+		}
+	}
+
+	/**
+	 * 停止领取新任务，已领取的任务继续执行并确认
+	 */
+	public void stop() {
+		stopped = true;
+		LockSupport.unpark(pump);
+	}
+
+	public boolean isStopped() {
+		return stopped;
+	}
+
+	public SharedWorkQueue getQueue() {
+		return queue;
+	}
+
+	public long getClaimedCount() {
+		return claimed.get();
+	}
+
+	public long getAckedCount() {
+		return acked.get();
+	}
+
+	/**
+	 * 无法解码被丢弃的任务数
+	 * @return
+	 */
+	public long getDecodeFailedCount() {
+		return decodeFailed.get();
+	}
+
+	/**
+	 * 最后一次队列读写或解码异常
+	 * @return 没有时返回null
+	 */
+	public Throwable getLastError() {
+		return lastError;
+	}
+}
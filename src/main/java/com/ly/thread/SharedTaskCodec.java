@@ -0,0 +1,23 @@
+package com.ly.thread;
+
+/**
+ * 共享任务队列中的任务描述与WorkItem的转换
+ * 	所有使用同一队列文件的进程必须使用兼容的编码
+ *
+ *
+ */
+public interface SharedTaskCodec {
+	/**
+	 * 把任务编码为任务描述
+	 * @param task 线程任务
+	 * @return 任务描述，长度不超过队列的getMaxDescriptorLength()
+	 */
+	byte[] encode(WorkItem task);
+
+	/**
+	 * 把任务描述解码为任务，抛出异常的任务描述会被确认丢弃
+	 * @param descriptor 任务描述
+	 * @return 线程任务
+	 */
+	WorkItem decode(byte[] descriptor);
+}
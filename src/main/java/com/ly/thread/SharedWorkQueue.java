@@ -0,0 +1,505 @@
+package com.ly.thread;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 同一台机器上多个JVM共享的任务队列，基于内存映射文件的环形缓冲区
+ * 	队列中保存的是序列化后的任务描述（字节数组），由SharedTaskCodec与WorkItem互相转换。
+ * 	文件布局：头部（容量、槽大小、head、tail）、进程表、capacity个定长槽，槽状态为空闲、待领取、已领取。
+ * 	入队、领取、确认都在文件锁（进程间）内完成，因此修改映射内存不需要跨进程的CAS。
+ * 	每个进程打开队列时在进程表中登记，并持有自己表项对应的一个字节的文件锁直到关闭；
+ * 	进程崩溃时操作系统释放该锁，其他进程能获得该锁即判定其已退出，把它已领取未确认的任务恢复为待领取（至少执行一次）。
+ * 	只保证进程崩溃后的一致性，不调用force()，机器掉电时队列内容可能丢失
+ * 	<p>
+ * 	所有文件操作都在本队列专用的I/O线程中执行：FileChannel的操作可被中断，调用线程的中断会关闭整个通道并释放本进程的全部文件锁，
+ * 	其他进程随即恢复本进程领取中的任务导致重复执行。调用线程只等待I/O线程的结果，等待期间的中断在返回后恢复。
+ * 	文件锁属于进程而不是文件描述符，关闭一个通道会释放本JVM在该文件上的所有锁，因此同一JVM内同一文件只能打开一次
+ *
+ */
+public final class SharedWorkQueue implements Closeable {
+	private static final int MAGIC = 0x4C595351;
+	private static final int VERSION = 2;
+	/** 最多同时打开队列的进程数 **/
+	static final int MAX_OWNERS = 64;
+
+	/******* 头部 *********************/
+	private static final int OFF_MAGIC = 0;
+	private static final int OFF_VERSION = 4;
+	private static final int OFF_CAPACITY = 8;
+	private static final int OFF_SLOT_SIZE = 12;
+	/** 最早未确认的序号 **/
+	private static final int OFF_HEAD = 16;
+	/** 下一个入队序号 **/
+	private static final int OFF_TAIL = 24;
+	/** 可能待领取的最小序号，领取时从这里开始查找 **/
+	private static final int OFF_READY_HINT = 32;
+	/** 进程表，每项一个long（进程标识，0表示空闲）**/
+	private static final int OFF_OWNERS = 64;
+	private static final int DATA_OFFSET = OFF_OWNERS + MAX_OWNERS * 8;
+
+	/******* 槽 *********************/
+	private static final int SLOT_STATE = 0;
+	private static final int SLOT_LENGTH = 4;
+	/** 领取者的进程标识（进程表项的值而不是下标，表项被复用后不会误判）**/
+	private static final int SLOT_OWNER = 8;
+	private static final int SLOT_SEQ = 16;
+	static final int SLOT_HEADER = 24;
+	private static final int FREE = 0;
+	private static final int READY = 1;
+	private static final int CLAIMED = 2;
+
+	/******* 文件锁位置，在映射区之外，只用于加锁 *********************/
+	private static final long LOCK_MUTEX = 1L << 40;
+	private static final long LOCK_OWNERS = LOCK_MUTEX + 1L;
+
+	/** 本JVM中已打开的队列文件 **/
+	private static final Set<String> OPEN_FILES = ConcurrentHashMap.newKeySet();
+
+	private final File file;
+	private final int capacity;
+	private final int slotSize;
+	/** 执行所有文件操作的I/O线程，同时保证同一JVM内的互斥 **/
+	private final ExecutorService io;
+	/** 以下字段只在I/O线程中访问 **/
+	private RandomAccessFile raf;
+	private FileChannel channel;
+	private MappedByteBuffer buffer;
+	/** 本进程在进程表中的位置 **/
+	private int ownerIndex = -1;
+	/** 本进程的进程标识，写在进程表项和领取的槽中 **/
+	private long ownerToken;
+	/** 本进程表项的存活锁 **/
+	private FileLock ownerLock;
+	/** 恢复的已退出进程的任务数 **/
+	private final AtomicLong reclaimedCount = new AtomicLong();
+	private volatile boolean closed;
+
+	private SharedWorkQueue(File file, int capacity, int slotSize) throws IOException {
+		if (capacity <= 0)
+			throw new IllegalArgumentException("capacity必须大于0");
+		if (slotSize <= SLOT_HEADER || slotSize % 8 != 0)
+			throw new IllegalArgumentException("slotSize必须是8的倍数且大于" + SLOT_HEADER);
+		this.file = file.getCanonicalFile();
+		this.capacity = capacity;
+		this.slotSize = slotSize;
+		if (!OPEN_FILES.add(this.file.getPath()))
+			throw new IOException(this.file + "已在本JVM中打开");
+		final String threadName = "SharedWorkQueue-io-" + this.file.getName();
+		this.io = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), r -> {
+			Thread t = new Thread(r, threadName);
+			t.setDaemon(true);
+			return t;
+		});
+		boolean ok = false;
+		try {
+			call(() -> {
+				openFile();
+				return null;
+			});
+			ok = true;
+		} finally {
+			if (!ok) {
+				closed = true;
+				io.shutdown();
+				OPEN_FILES.remove(this.file.getPath());
+			}
+		}
+	}
+
+	/**
+	 * 映射文件并在进程表中登记，在I/O线程中执行
+	 * @throws IOException
+	 */
+	private void openFile() throws IOException {
+		raf = new RandomAccessFile(file, "rw");
+		boolean ok = false;
+		try {
+			channel = raf.getChannel();
+			long size = DATA_OFFSET + (long) capacity * slotSize;
+			FileLock mutex = channel.lock(LOCK_MUTEX, 1L, false);
+			try {
+				if (raf.length() == 0L)
+					raf.setLength(size);
+				buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0L, size);
+				if (buffer.getInt(OFF_MAGIC) == 0) {
+					buffer.putInt(OFF_VERSION, VERSION);
+					buffer.putInt(OFF_CAPACITY, capacity);
+					buffer.putInt(OFF_SLOT_SIZE, slotSize);
+					buffer.putLong(OFF_HEAD, 0L);
+					buffer.putLong(OFF_TAIL, 0L);
+					buffer.putLong(OFF_READY_HINT, 0L);
+					buffer.putInt(OFF_MAGIC, MAGIC);
+				} else if (buffer.getInt(OFF_MAGIC) != MAGIC || buffer.getInt(OFF_VERSION) != VERSION) {
+					throw new IOException(file + "不是共享任务队列文件");
+				} else if (buffer.getInt(OFF_CAPACITY) != capacity || buffer.getInt(OFF_SLOT_SIZE) != slotSize) {
+					throw new IllegalArgumentException(file + "的容量为" + buffer.getInt(OFF_CAPACITY) + "，槽大小为"
+							+ buffer.getInt(OFF_SLOT_SIZE) + "，与参数不一致");
+				}
+				reclaimDeadOwners();
+				int index = -1;
+				for (int i = 0; i < MAX_OWNERS; i++) {
+					if (buffer.getLong(ownerOffset(i)) == 0L) {
+						index = i;
+						break;
+					}
+				}
+				if (index < 0)
+					throw new IOException(file + "已被" + MAX_OWNERS + "个进程打开");
+				FileLock live = channel.tryLock(LOCK_OWNERS + index, 1L, false);
+				if (live == null)
+					throw new IOException(file + "的进程表项" + index + "被占用");
+				long token;
+				do {
+					token = ThreadLocalRandom.current().nextLong();
+				} while (token == 0L);
+				buffer.putLong(ownerOffset(index), token);
+				ownerIndex = index;
+				ownerToken = token;
+				ownerLock = live;
+			} finally {
+				mutex.release();
+			}
+			ok = true;
+		} finally {
+			if (!ok)
+				raf.close();
+		}
+	}
+
+	/**
+	 * 打开（不存在时创建）共享队列，所有进程的capacity和slotSize必须一致
+	 * @param file 队列文件，建议放在/dev/shm等内存文件系统
+	 * @param capacity 槽数
+	 * @param slotSize 每个槽的字节数（8的倍数），任务描述最多slotSize - 24字节
+	 * @return
+	 * @throws IOException 文件格式不符、进程表已满或本JVM已打开该文件
+	 */
+	public static SharedWorkQueue open(File file, int capacity, int slotSize) throws IOException {
+		return new SharedWorkQueue(file, capacity, slotSize);
+	}
+
+	/**
+	 * 入队一个任务描述
+	 * @param descriptor 任务描述
+	 * @return 队列已满时返回false
+	 * @throws IOException
+	 */
+	public boolean offer(final byte[] descriptor) throws IOException {
+		if (descriptor.length > slotSize - SLOT_HEADER)
+			throw new IllegalArgumentException("任务描述长度" + descriptor.length + "超过" + (slotSize - SLOT_HEADER));
+		return call(() -> {
+			FileLock mutex = lock();
+			try {
+				long head = buffer.getLong(OFF_HEAD);
+				long tail = buffer.getLong(OFF_TAIL);
+				if (tail - head >= capacity)
+					return false;
+				int slot = slotOffset(tail);
+				buffer.putLong(slot + SLOT_SEQ, tail);
+				buffer.putInt(slot + SLOT_LENGTH, descriptor.length);
+				buffer.putLong(slot + SLOT_OWNER, 0L);
+				for (int i = 0; i < descriptor.length; i++) {
+					buffer.put(slot + SLOT_HEADER + i, descriptor[i]);
+				}
+				//先写完内容再改状态和tail，进程中途崩溃时该槽不可见
+				buffer.putInt(slot + SLOT_STATE, READY);
+				buffer.putLong(OFF_TAIL, tail + 1L);
+				return true;
+			} finally {
+				mutex.release();
+			}
+		});
+	}
+
+	/**
+	 * 领取一个待领取的任务，领取后必须调用ack确认，本进程退出前未确认的任务会被其他进程重新领取
+	 * @return 没有待领取的任务时返回null
+	 * @throws IOException
+	 */
+	public Claim claim() throws IOException {
+		return call(() -> {
+			FileLock mutex = lock();
+			try {
+				long tail = buffer.getLong(OFF_TAIL);
+				long seq = Math.max(buffer.getLong(OFF_HEAD), buffer.getLong(OFF_READY_HINT));
+				for (; seq < tail; seq++) {
+					int slot = slotOffset(seq);
+					if (buffer.getInt(slot + SLOT_STATE) != READY)
+						continue;
+					byte[] descriptor = new byte[buffer.getInt(slot + SLOT_LENGTH)];
+					for (int i = 0; i < descriptor.length; i++) {
+						descriptor[i] = buffer.get(slot + SLOT_HEADER + i);
+					}
+					//先写领取者再改状态，中途崩溃时仍可按领取者恢复
+					buffer.putLong(slot + SLOT_OWNER, ownerToken);
+					buffer.putInt(slot + SLOT_STATE, CLAIMED);
+					buffer.putLong(OFF_READY_HINT, seq + 1L);
+					return new Claim(seq, descriptor);
+				}
+				buffer.putLong(OFF_READY_HINT, tail);
+				return null;
+			} finally {
+				mutex.release();
+			}
+		});
+	}
+
+	/**
+	 * 确认已领取的任务执行完毕，释放其槽
+	 * @param claim 领取的任务
+	 * @return 任务已不属于本进程（队列已关闭后被其他进程恢复）时返回false
+	 * @throws IOException
+	 */
+	public boolean ack(final Claim claim) throws IOException {
+		return call(() -> {
+			FileLock mutex = lock();
+			try {
+				int slot = slotOffset(claim.seq);
+				if (buffer.getLong(slot + SLOT_SEQ) != claim.seq || buffer.getInt(slot + SLOT_STATE) != CLAIMED
+						|| buffer.getLong(slot + SLOT_OWNER) != ownerToken)
+					return false;
+				buffer.putInt(slot + SLOT_STATE, FREE);
+				//head跳过已确认的槽
+				long head = buffer.getLong(OFF_HEAD);
+				long tail = buffer.getLong(OFF_TAIL);
+				while (head < tail && buffer.getInt(slotOffset(head) + SLOT_STATE) == FREE) {
+					head++;
+				}
+				buffer.putLong(OFF_HEAD, head);
+				return true;
+			} finally {
+				mutex.release();
+			}
+		});
+	}
+
+	/**
+	 * 检查进程表，把已退出进程领取未确认的任务恢复为待领取
+	 * @return 恢复的任务数
+	 * @throws IOException
+	 */
+	public int reclaim() throws IOException {
+		return call(() -> {
+			FileLock mutex = lock();
+			try {
+				return reclaimDeadOwners();
+			} finally {
+				mutex.release();
+			}
+		});
+	}
+
+	/**
+	 * 恢复已退出进程的任务，需持有锁
+	 * @return 恢复的任务数
+	 * @throws IOException
+	 */
+	private int reclaimDeadOwners() throws IOException {
+		int reclaimed = 0;
+		for (int i = 0; i < MAX_OWNERS; i++) {
+			long token = buffer.getLong(ownerOffset(i));
+			if (token == 0L || !isDead(i))
+				continue;
+			long hint = buffer.getLong(OFF_READY_HINT);
+			long tail = buffer.getLong(OFF_TAIL);
+			for (long seq = buffer.getLong(OFF_HEAD); seq < tail; seq++) {
+				int slot = slotOffset(seq);
+				if (buffer.getInt(slot + SLOT_STATE) == CLAIMED && buffer.getLong(slot + SLOT_OWNER) == token) {
+					buffer.putInt(slot + SLOT_STATE, READY);
+					hint = Math.min(hint, seq);
+					reclaimed++;
+				}
+			}
+			buffer.putLong(OFF_READY_HINT, hint);
+			//最后清除表项，中途崩溃时下次仍会恢复
+			buffer.putLong(ownerOffset(i), 0L);
+		}
+		reclaimedCount.addAndGet(reclaimed);
+		return reclaimed;
+	}
+
+	/**
+	 * 进程表项的持有者是否已退出：能获得其存活锁即已退出
+	 * @param index 进程表项
+	 * @return
+	 * @throws IOException
+	 */
+	private boolean isDead(int index) throws IOException {
+		if (index == ownerIndex)
+			return false;
+		FileLock probe = channel.tryLock(LOCK_OWNERS + index, 1L, false);
+		if (probe == null)
+			return false;
+		probe.release();
+		return true;
+	}
+
+	/**
+	 * 取得进程间互斥锁，在I/O线程中执行
+	 * @return
+	 * @throws IOException
+	 */
+	private FileLock lock() throws IOException {
+		if (closed)
+			throw new IOException(file + "已关闭");
+		return channel.lock(LOCK_MUTEX, 1L, false);
+	}
+
+	/**
+	 * 在I/O线程中执行文件操作并等待结果，等待不响应中断（中断标记在返回后恢复）
+	 * @param op 文件操作
+	 * @return 操作结果
+	 * @throws IOException
+	 */
+	private <T> T call(Callable<T> op) throws IOException {
+		if (closed)
+			throw new IOException(file + "已关闭");
+		Future<T> f;
+		try {
+			f = io.submit(op);
+		} catch (RejectedExecutionException e) {
+			throw new IOException(file + "已关闭", e);
+		}
+		boolean interrupted = false;
+		try {
+			while (true) {
+				try {
+					return f.get();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new IOException(cause);
+		} finally {
+			if (interrupted)
+				Thread.currentThread().interrupt();
+		}
+	}
+
+	private int slotOffset(long seq) {
+		return DATA_OFFSET + (int) (seq % capacity) * slotSize;
+	}
+
+	private static int ownerOffset(int index) {
+		return OFF_OWNERS + index * 8;
+	}
+
+	/**
+	 * 队列中的任务数（包括已领取未确认的）
+	 * @return
+	 * @throws IOException
+	 */
+	public int size() throws IOException {
+		return call(() -> {
+			FileLock mutex = lock();
+			try {
+				return (int) (buffer.getLong(OFF_TAIL) - buffer.getLong(OFF_HEAD));
+			} finally {
+				mutex.release();
+			}
+		});
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * 任务描述的最大长度
+	 * @return
+	 */
+	public int getMaxDescriptorLength() {
+		return slotSize - SLOT_HEADER;
+	}
+
+	/**
+	 * 本进程恢复的已退出进程的任务数
+	 * @return
+	 */
+	public long getReclaimedCount() {
+		return reclaimedCount.get();
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * 关闭队列，释放进程表项；本进程已领取未确认的任务会被其他进程恢复
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (closed)
+			return;
+		try {
+			call(() -> {
+				//先标记关闭，已排队的操作在I/O线程中执行时会失败
+				closed = true;
+				try {
+					ownerLock.release();
+				} finally {
+					raf.close();
+				}
+				return null;
+			});
+		} finally {
+			closed = true;
+			io.shutdown();
+			OPEN_FILES.remove(file.getPath());
+		}
+	}
+
+	/**
+	 * 领取的任务
+	 *
+	 */
+	public static final class Claim {
+		/** 入队序号 **/
+		private final long seq;
+		/** 任务描述 **/
+		private final byte[] descriptor;
+
+		Claim(long seq, byte[] descriptor) {
+			this.seq = seq;
+			this.descriptor = descriptor;
+		}
+
+		public long getSeq() {
+			return seq;
+		}
+
+		public byte[] getDescriptor() {
+			return descriptor;
+		}
+	}
+}
@@ -0,0 +1,174 @@
+package com.ly.thread;
+
+import java.util.Iterator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 流式提交的一批任务
+ * 	由独立的提交线程从Iterator逐个取出WorkItem提交给管理器，同时在途（排队或运行中）的任务不超过maxInFlight个，
+ * 	有任务结束才继续取下一个；已结束的任务不再被引用，因此内存占用与任务总数无关
+ *
+ */
+public class StreamingJob implements WorkItemListener {
+	/** 线程池管理器 **/
+	private final MyThreadPoolExecutorManager manager;
+	/** 任务来源（仅提交线程访问）**/
+	private final Iterator<? extends WorkItem> source;
+	/** 每个任务结束时的回调，可为null **/
+	private final WorkItemListener listener;
+	/** 在途许可 **/
+	private final Semaphore permits;
+	/** 已提交、已结束、失败的任务数 **/
+	private final AtomicLong submitted = new AtomicLong();
+	private final AtomicLong completed = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+	/** 全部结束 **/
+	private final CountDownLatch done = new CountDownLatch(1);
+	/** 是否已停止取任务 **/
+	private volatile boolean exhausted;
+	/** 是否被取消 **/
+	private volatile boolean cancelled;
+	/** 任务来源抛出的异常 **/
+	private volatile Throwable sourceError;
+	/** 提交线程 **/
+	private final Thread pump;
+
+	StreamingJob(MyThreadPoolExecutorManager manager, Iterator<? extends WorkItem> source, int maxInFlight,
+			WorkItemListener listener) {
+		if (source == null)
+			throw new NullPointerException();
+		if (maxInFlight <= 0)
+			throw new IllegalArgumentException("maxInFlight必须大于0");
+		this.manager = manager;
+		this.source = source;
+		this.listener = listener;
+		this.permits = new Semaphore(maxInFlight);
+		this.pump = new Thread(this::pump, "StreamingJob-" + manager.getName());
+		this.pump.setDaemon(true);
+	}
+
+	void start() {
+		pump.start();
+	}
+
+	/**
+	 * 提交线程：取得许可后取下一个任务并提交
+	 */
+	private void pump() {
+		try {
+			while (!cancelled) {
+				permits.acquire();
+				WorkItem task;
+				try {
+					if (cancelled || !source.hasNext()) {
+						permits.release();
+						break;
+					}
+					task = source.next();
+				} catch (RuntimeException e) {
+					permits.release();
+					sourceError = e;
+					break;
+				}
+				if (task == null) {
+					permits.release();
+					continue;
+				}
+				submitted.incrementAndGet();
+				task.addCompletionListener(this);
+				try {
+					manager.doExecute(task);
+				} catch (RuntimeException e) {
+					//提交被拒绝的任务以该异常结束，同样回调并归还许可
+					if (task.isReady()) {
+						task.setRunning();
+						task.setOver(e);
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			cancelled = true;
+		} finally {
+			exhausted = true;
+			if (submitted.get() == completed.get())
+				done.countDown();
+		}
+	}
+
+	@Override
+	public void onComplete(WorkItem task) {
+		try {
+			if (!task.isSuccess())
+				failed.incrementAndGet();
+			if (listener != null)
+				listener.onComplete(task);
+		} finally {
+			long n = completed.incrementAndGet();
+			permits.release();
+			if (exhausted && n == submitted.get())
+				done.countDown();
+		}
+	}
+
+	/**
+	 * 等待全部任务结束
+	 * @throws InterruptedException
+	 */
+	public void await() throws InterruptedException {
+		done.await();
+	}
+
+	/**
+	 * 在指定时间内等待全部任务结束
+	 * @param timeout 超时时间
+	 * @param unit 时间单位
+	 * @return 是否已全部结束
+	 * @throws InterruptedException
+	 */
+	public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+		return done.await(timeout, unit);
+	}
+
+	/**
+	 * 停止取新任务，已提交的任务继续执行
+	 */
+	public void cancel() {
+		cancelled = true;
+		pump.interrupt();
+	}
+
+	public boolean isDone() {
+		return done.getCount() == 0L;
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	public long getSubmittedCount() {
+		return submitted.get();
+	}
+
+	public long getCompletedCount() {
+		return completed.get();
+	}
+
+	/**
+	 * 未成功结束的任务数（包括提交被拒绝的）
+	 * @return
+	 */
+	public long getFailedCount() {
+		return failed.get();
+	}
+
+	/**
+	 * 任务来源抛出的异常，之后不再取新任务
+	 * @return 没有时返回null
+	 */
+	public Throwable getSourceError() {
+		return sourceError;
+	}
+}
@@ -0,0 +1,13 @@
+package com.ly.thread;
+
+/**
+ * 卡住任务回调
+ *
+ */
+public interface StuckTaskListener {
+	/**
+	 * 发现运行时间超过阈值的任务时回调（在看门狗线程中执行，每次执行只回调一次）
+	 * @param report 卡住任务的信息
+	 */
+	void onStuck(StuckTaskReport report);
+}
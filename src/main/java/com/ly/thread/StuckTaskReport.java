@@ -0,0 +1,75 @@
+package com.ly.thread;
+
+/**
+ * 卡住任务的信息
+ *
+ */
+public final class StuckTaskReport {
+	/** 线程池名称 **/
+	private final String poolName;
+	/** 线程任务 **/
+	private final WorkItem task;
+	/** 执行线程 **/
+	private final Thread thread;
+	/** 已运行时间（毫秒）**/
+	private final long elapsedMillis;
+	/** 同类任务的典型运行时间（毫秒），未知时为-1 **/
+	private final long typicalMillis;
+	/** 执行线程的栈 **/
+	private final StackTraceElement[] stackTrace;
+	/** 采取的处理 **/
+	private final StuckTaskWatchdog.Policy action;
+
+	StuckTaskReport(String poolName, WorkItem task, Thread thread, long elapsedMillis, long typicalMillis,
+			StackTraceElement[] stackTrace, StuckTaskWatchdog.Policy action) {
+		this.poolName = poolName;
+		this.task = task;
+		this.thread = thread;
+		this.elapsedMillis = elapsedMillis;
+		this.typicalMillis = typicalMillis;
+		this.stackTrace = stackTrace;
+		this.action = action;
+	}
+
+	public String getPoolName() {
+		return poolName;
+	}
+
+	public WorkItem getTask() {
+		return task;
+	}
+
+	public Thread getThread() {
+		return thread;
+	}
+
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	public long getTypicalMillis() {
+		return typicalMillis;
+	}
+
+	public StackTraceElement[] getStackTrace() {
+		return stackTrace;
+	}
+
+	public StuckTaskWatchdog.Policy getAction() {
+		return action;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("线程池").append(poolName).append("的任务").append(task.getClass().getName())
+				.append("在线程").append(thread.getName()).append("已运行").append(elapsedMillis).append("毫秒");
+		if (typicalMillis >= 0L)
+			sb.append("（同类任务通常").append(typicalMillis).append("毫秒）");
+		sb.append("，处理：").append(action);
+		for (StackTraceElement e : stackTrace) {
+			sb.append("\n\tat ").append(e);
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,252 @@
+package com.ly.thread;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 卡住任务看门狗
+ * 	每个线程池线程有一个登记槽，执行开始、结束时只写槽中的几个字段；看门狗线程定期扫描所有槽，
+ * 	运行时间超过固定阈值，或超过同类任务典型运行时间（指数加权平均）的若干倍时，抓取执行线程的栈并回调监听器，
+ * 	然后按处理策略中断该次执行（等同超时取消，WorkItem按重试规则处理），或临时增加一个线程以补足并发度
+ *
+ */
+public class StuckTaskWatchdog {
+	/**
+	 * 处理策略
+	 *
+	 */
+	public static enum Policy {
+		/** 只回调监听器 **/
+		REPORT,
+		/** 取消并中断该次执行 **/
+		INTERRUPT,
+		/** 临时增加一个线程，该次执行结束后恢复 **/
+		REPLACE_THREAD
+	}
+	/** 按典型运行时间判断所需的最少样本数 **/
+	private static final int MIN_SAMPLES = 20;
+	/** 默认检查间隔（纳秒）**/
+	private static final long DEFAULT_CHECK_NANOS = TimeUnit.MILLISECONDS.toNanos(100L);
+
+	/** 线程池 **/
+	private final TCThreadPoolExecutor executor;
+	/** 固定阈值（纳秒），小于等于0表示不使用 **/
+	private final long thresholdNanos;
+	/** 典型运行时间的倍数，小于等于0表示不使用 **/
+	private final double typicalMultiple;
+	/** 处理策略 **/
+	private final Policy policy;
+	/** 监听器 **/
+	private final StuckTaskListener listener;
+	/** 检查间隔（纳秒），同时是按典型运行时间判断时的最小阈值 **/
+	private final long checkNanos;
+	/** 所有线程的登记槽 **/
+	private final ConcurrentLinkedQueue<Slot> slots = new ConcurrentLinkedQueue<Slot>();
+	private final ThreadLocal<Slot> localSlot = new ThreadLocal<Slot>();
+	/** 各类任务的运行时间统计 **/
+	private final ConcurrentHashMap<Class<?>, Typical> typicals = new ConcurrentHashMap<Class<?>, Typical>();
+	/** 发现的卡住任务数 **/
+	private final AtomicLong stuckCount = new AtomicLong();
+	/** 扫描线程 **/
+	private final ScheduledThreadPoolExecutor scanner;
+
+	/**
+	 * 构造器
+	 * @param executor 线程池
+	 * @param threshold 固定阈值，小于等于0表示不使用
+	 * @param unit 时间单位
+	 * @param typicalMultiple 典型运行时间的倍数，小于等于0表示不使用
+	 * @param policy 处理策略
+	 * @param listener 监听器，可为null
+	 */
+	StuckTaskWatchdog(TCThreadPoolExecutor executor, long threshold, TimeUnit unit, double typicalMultiple,
+			Policy policy, StuckTaskListener listener) {
+		if (threshold <= 0L && typicalMultiple <= 0D)
+			throw new IllegalArgumentException("threshold、typicalMultiple至少设置一个");
+		if (policy == null)
+			throw new NullPointerException("policy不可为null");
+		this.executor = executor;
+		this.thresholdNanos = threshold > 0L ? unit.toNanos(threshold) : -1L;
+		this.typicalMultiple = typicalMultiple;
+		this.policy = policy;
+		this.listener = listener;
+		this.checkNanos = thresholdNanos > 0L
+				? Math.min(Math.max(thresholdNanos / 4L, TimeUnit.MILLISECONDS.toNanos(10L)), TimeUnit.SECONDS.toNanos(1L))
+				: DEFAULT_CHECK_NANOS;
+		this.scanner = new ScheduledThreadPoolExecutor(1, (Runnable r) -> {
+			Thread t = new Thread(r, "StuckTaskWatchdog-" + executor.getPoolName());
+			t.setDaemon(true);
+			return t;
+		});
+		this.scanner.scheduleWithFixedDelay(this::scan, checkNanos, checkNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * 一次执行开始运行（线程池线程调用）
+	 * @param attempt 执行
+	 * @param startNanos 开始时间
+	 */
+	void begin(WorkItemAttempt attempt, long startNanos) {
+		Slot slot = localSlot.get();
+		if (slot == null) {
+			slot = new Slot(Thread.currentThread());
+			localSlot.set(slot);
+			slots.add(slot);
+		}
+		slot.seq++;
+		slot.startNanos = startNanos;
+		slot.attempt = attempt;
+	}
+
+	/**
+	 * 一次执行运行结束（线程池线程调用）
+	 * @param attempt 执行
+	 * @param runNanos 运行时间
+	 */
+	void end(WorkItemAttempt attempt, long runNanos) {
+		Slot slot = localSlot.get();
+		boolean compensated;
+		synchronized (slot) {
+			slot.attempt = null;
+			compensated = slot.compensated;
+			slot.compensated = false;
+		}
+		if (compensated)
+			executor.removeCompensation();
+		Class<?> type = attempt.task.getClass();
+		Typical typical = typicals.get(type);
+		if (typical == null) {
+			typicals.putIfAbsent(type, new Typical());
+			typical = typicals.get(type);
+		}
+		typical.record(runNanos);
+	}
+
+	/**
+	 * 扫描所有线程
+	 */
+	private void scan() {
+		long now = System.nanoTime();
+		for (Iterator<Slot> it = slots.iterator(); it.hasNext();) {
+			Slot slot = it.next();
+			if (!slot.thread.isAlive()) {
+				it.remove();
+				continue;
+			}
+			WorkItemAttempt attempt = slot.attempt;
+			long seq = slot.seq;
+			if (attempt == null || seq == slot.reportedSeq)
+				continue;
+			WorkItem task = attempt.task;
+			long elapsed = now - slot.startNanos;
+			Typical typical = task == null ? null : typicals.get(task.getClass());
+			long typicalNanos = typical == null || typical.count.get() < MIN_SAMPLES ? -1L : typical.ewma.get();
+			if (task == null || elapsed < thresholdFor(typicalNanos))
+				continue;
+			StackTraceElement[] stack = slot.thread.getStackTrace();
+			synchronized (slot) {
+				//抓栈期间该次执行可能已结束
+				if (slot.attempt != attempt || slot.seq != seq)
+					continue;
+				slot.reportedSeq = seq;
+				if (policy == Policy.INTERRUPT) {
+					if (attempt.cancel(true))
+						WorkItemEvents.cancel(executor.getPoolName(), task, attempt.attemptNo, "stuck");
+				} else if (policy == Policy.REPLACE_THREAD) {
+					slot.compensated = true;
+					executor.addCompensation();
+				}
+			}
+			stuckCount.incrementAndGet();
+			if (listener != null) {
+				try {
+					listener.onStuck(new StuckTaskReport(executor.getPoolName(), task, slot.thread,
+							TimeUnit.NANOSECONDS.toMillis(elapsed),
+							typicalNanos < 0L ? -1L : TimeUnit.NANOSECONDS.toMillis(typicalNanos), stack, policy));
+				} catch (RuntimeException e) {}
+			}
+		}
+	}
+
+	/**
+	 * 计算卡住阈值
+	 * @param typicalNanos 典型运行时间，未知时为-1
+	 * @return
+	 */
+	private long thresholdFor(long typicalNanos) {
+		long threshold = thresholdNanos > 0L ? thresholdNanos : Long.MAX_VALUE;
+		if (typicalMultiple > 0D && typicalNanos >= 0L)
+			threshold = Math.min(threshold, Math.max((long) (typicalNanos * typicalMultiple), checkNanos));
+		return threshold;
+	}
+
+	/**
+	 * 停止扫描
+	 */
+	void stop() {
+		scanner.shutdownNow();
+	}
+
+	public Policy getPolicy() {
+		return policy;
+	}
+
+	/**
+	 * 发现的卡住任务数
+	 * @return
+	 */
+	public long getStuckCount() {
+		return stuckCount.get();
+	}
+
+	/**
+	 * 某类任务的典型运行时间
+	 * @param type 任务类
+	 * @return 毫秒，样本不足时为-1
+	 */
+	public long getTypicalMillis(Class<? extends WorkItem> type) {
+		Typical typical = typicals.get(type);
+		return typical == null || typical.count.get() < MIN_SAMPLES ? -1L : TimeUnit.NANOSECONDS.toMillis(typical.ewma.get());
+	}
+
+	/**
+	 * 线程登记槽，只有所属线程写入执行信息
+	 *
+	 */
+	private static final class Slot {
+		final Thread thread;
+		volatile WorkItemAttempt attempt;
+		volatile long startNanos;
+		/** 执行序号 **/
+		volatile long seq;
+		/** 已回调的执行序号（只由扫描线程访问）**/
+		long reportedSeq;
+		/** 是否已为本次执行临时增加线程（持有槽的锁访问）**/
+		boolean compensated;
+
+		Slot(Thread thread) {
+			this.thread = thread;
+		}
+	}
+
+	/**
+	 * 运行时间的指数加权平均（权重1/8）
+	 *
+	 */
+	private static final class Typical {
+		final AtomicLong ewma = new AtomicLong();
+		final AtomicLong count = new AtomicLong();
+
+		void record(long nanos) {
+			long n = count.getAndIncrement();
+			long old;
+			do {
+				old = ewma.get();
+			} while (!ewma.compareAndSet(old, n == 0L ? nanos : old + (nanos - old) / 8L));
+		}
+	}
+}
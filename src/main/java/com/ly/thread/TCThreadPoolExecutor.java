@@ -3,8 +3,13 @@ package com.ly.thread;
 import com.ly.thread.WorkItem.RunStatusOfWorkItem;
 
 import java.lang.reflect.Field;
-import java.util.Objects;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * 同程自定义线程池
@@ -25,6 +30,84 @@ public class TCThreadPoolExecutor extends ThreadPoolExecutor {
 		queue.addAll(workQueue);
 		return queue;
 	}
+	/**
+	 * 最近执行耗时，用于计算对冲延迟
+	 */
+	final LatencyRecorder latencyRecorder = new LatencyRecorder(1024);
+	/**
+	 * 线程池名称，用于监控事件
+	 */
+	private volatile String poolName = "TCThreadPoolExecutor@" + Integer.toHexString(System.identityHashCode(this));
+	/**
+	 * 成功结束的WorkItem数
+	 */
+	final AtomicLong succeededCount = new AtomicLong();
+	/**
+	 * 失败结束的WorkItem数（包括超时、取消）
+	 */
+	final AtomicLong failedCount = new AtomicLong();
+	/**
+	 * 重试次数
+	 */
+	final AtomicLong retriedCount = new AtomicLong();
+	/**
+	 * 超时次数
+	 */
+	final AtomicLong timedOutCount = new AtomicLong();
+	/**
+	 * 已被取消但仍在运行的执行数（忽略中断的任务会一直占用线程）
+	 */
+	final AtomicInteger zombieCount = new AtomicInteger();
+	/**
+	 * 因上一次执行仍在运行而推迟的重试数
+	 */
+	final AtomicLong deferredRetryCount = new AtomicLong();
+	/**
+	 * 负载保护（为null表示未开启），由线程池线程记录队列等待时间
+	 */
+	volatile LoadShedder loadShedder;
+	/**
+	 * 卡住任务看门狗（为null表示未开启）
+	 */
+	volatile StuckTaskWatchdog watchdog;
+	/**
+	 * 按任务类的CPU时间、内存分配统计（为null表示未开启）
+	 */
+	volatile TaskProfiler profiler;
+	/**
+	 * 是否暂停派发：暂停时线程不再从队列中取出新的执行，已在运行的不受影响
+	 */
+	private volatile boolean paused;
+	private final ReentrantLock pauseLock = new ReentrantLock();
+	private final Condition unpaused = pauseLock.newCondition();
+	/**
+	 * 对象池大小
+	 */
+	private static final int RECYCLING_POOL_SIZE = 1024;
+	/**
+	 * 执行过程对象池
+	 */
+	private final RecyclingPool<WorkItemExecution> executionPool = new RecyclingPool<WorkItemExecution>(RECYCLING_POOL_SIZE);
+	/**
+	 * 执行包装对象池
+	 */
+	private final RecyclingPool<WorkItemAttempt> attemptPool = new RecyclingPool<WorkItemAttempt>(RECYCLING_POOL_SIZE);
+	/**
+	 * 线程池大小调整锁：配置大小和补偿线程数的所有修改都在此锁下进行
+	 */
+	private final Object sizeLock = new Object();
+	/**
+	 * 配置的核心线程数（不含补偿线程）
+	 */
+	private int configuredCoreSize;
+	/**
+	 * 配置的最大线程数（不含补偿线程）
+	 */
+	private int configuredMaximumSize;
+	/**
+	 * 当前补偿线程数，叠加在配置大小之上
+	 */
+	private int compensation;
 	/**
 	 * 构造方法
 	 * @param corePoolSize 核心线程池大小
@@ -36,10 +119,28 @@ public class TCThreadPoolExecutor extends ThreadPoolExecutor {
 	TCThreadPoolExecutor(int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit,
 			BlockingQueue<WorkItem> workQueue) {
 		super(corePoolSize, maximumPoolSize, keepAliveTime, unit, translateQueueType(workQueue));
+		this.configuredCoreSize = corePoolSize;
+		this.configuredMaximumSize = maximumPoolSize;
+	}
+	/**
+	 * 构造方法
+	 * @param corePoolSize 核心线程池大小
+	 * @param maximumPoolSize 线程池最大容量
+	 * @param keepAliveTime 线程保持时间
+	 * @param unit 时间单位
+	 * @param queueType 线程队列类型
+	 * @param queueCapacity 线程队列容量，小于等于0表示默认容量
+	 */
+	TCThreadPoolExecutor(int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit,
+			WorkQueueType queueType, int queueCapacity) {
+		super(corePoolSize, maximumPoolSize, keepAliveTime, unit, queueType.newQueue(queueCapacity));
+		this.configuredCoreSize = corePoolSize;
+		this.configuredMaximumSize = maximumPoolSize;
 	}
 	/**
 	 * 同程自定义线程池核心方法：执行一个线程任务task
-	 * 	将一个线程task放入队列中，并使用Future监听线程task的执行情况，同时出发线程task的事件以及属性值的计算
+	 * 	将一个线程task放入队列中，由WorkItemExecution跟踪执行结果、超时、重试和对冲，同时出发线程task的事件以及属性值的计算
+	 * 	执行过程对象和每次执行的包装对象都会被回收复用，稳定状态下提交不分配对象（LINKED队列的节点除外）
 	 * @param task 一个线程任务
 	 */
 	public void doExecute(WorkItem task){
@@ -49,88 +150,194 @@ public class TCThreadPoolExecutor extends ThreadPoolExecutor {
 		if (RunStatusOfWorkItem.STATUS_READY != task.runningStatus) {
 			throw new RuntimeException("task的状态不是STATUS_READY，拒绝运行");
 		}
-		/*** 准备数据 *********/
-		long timeout = task.getTimeout();
-		final boolean isTimeoutFuncSet = task.isTimeoutFuncSet();//表示是否需要设置成超时模式
-		TimeUnit timeUnit = task.getTimeUnit();
-		int retryTimes = task.getRetryTimes();
-		/*if (retryTimes <= 0) {
-			retryTimes = 1;
-		}*/
+		if (task.isTimeoutFuncSet() && task.getTimeUnit() == null)
+			throw new NullPointerException("timeout设置为：" + task.getTimeout() + "，TimeUnit不可为null，请重新设置");
 		/*** 执行 *********/
-		if (isTimeoutFuncSet && timeUnit == null)
-			throw new NullPointerException("timeout设置为：" + timeout + "，TimeUnit不可为null，请重新设置");
-		//添加到执行队列
-		Future<?> f = super.submit(new CallableAdapter<Void>(task, null));
-		doExecuteWorkItem(retryTimes, f, (int retry, Future<?> future) -> {
-			Throwable thrown = null;
-			//第一次执行
-			try {
-				try {
-					if (isTimeoutFuncSet) {
-						future.get(timeout, timeUnit);
-					} else {
-						future.get();
-					}
-				} catch (InterruptedException | ExecutionException | TimeoutException e) {
-					if (future != null)
-						future.cancel(true);
-					thrown = e;
-				}
-			} catch (RuntimeException x) {
-				thrown = x; throw x;
-			} catch (Error x) {
-				thrown = x; throw x;
-			} catch (Throwable x) {
-				thrown = x; throw new Error(x);
-			}
-			//开始重试
-			try {
-				if (thrown != null) {
-					for (int i = 1; i <= retry; i++) {
-						try {
-							future = this.submit(new CallableAdapter<Void>(task, null));
-							//future = TCThreadPoolExecutor.super.submit(task, null);
-							//future = TCThreadPoolExecutor.super.submit(new CallableAdapter<Void>(task, null)); //new CallableAdapter<Void>(task, null) //Executors.callable(task, null)
-							if (isTimeoutFuncSet) {
-								future.get(timeout, timeUnit);
-							} else {
-								future.get();
-							}
-							thrown = null;
-							break;
-						} catch (InterruptedException | ExecutionException | TimeoutException e) {
-							if (future != null)
-								future.cancel(true);
-							thrown = e;
-						}
-					}
-				}
-			} catch (RuntimeException x) {
-				thrown = x; throw x;
-			} catch (Error x) {
-				thrown = x; throw x;
-			} catch (Throwable x) {
-				thrown = x; throw new Error(x);
-			} finally {
-				task.setOver(thrown);
-			}
-		});
+		acquireExecution().start(task);
+	}
+	public String getPoolName() {
+		return poolName;
+	}
+
+	void setPoolName(String poolName) {
+		this.poolName = poolName;
 	}
 	/**
-	 * 使用异步Future监听WorkItem线程
-	 * @param retryTimes
-	 * @param executor
+	 * 从对象池取出执行过程对象
+	 * @return
 	 */
-	private void doExecuteWorkItem(int retryTimes, Future<?> future, DoExecute4WorkItem executor){
-		Objects.requireNonNull(executor);
-		new Thread(() -> {
-			executor.doExecute(retryTimes, future);
-		}).start();
+	WorkItemExecution acquireExecution() {
+		WorkItemExecution e = executionPool.acquire();
+		return e != null ? e : new WorkItemExecution(this);
+	}
+	/**
+	 * 回收执行过程对象
+	 * @param e
+	 */
+	void releaseExecution(WorkItemExecution e) {
+		executionPool.release(e);
+	}
+	/**
+	 * 从对象池取出执行包装对象
+	 * @return
+	 */
+	WorkItemAttempt acquireAttempt() {
+		WorkItemAttempt a = attemptPool.acquire();
+		return a != null ? a : new WorkItemAttempt();
+	}
+	/**
+	 * 回收执行包装对象，只能在其run()结束后调用
+	 * @param a
+	 */
+	void releaseAttempt(WorkItemAttempt a) {
+		a.clear();
+		attemptPool.release(a);
+	}
+	/**
+	 * 强制关闭线程池：队列中尚未开始的WorkItem执行被取消，对应的WorkItem以CancellationException结束
+	 * @return 队列中尚未开始的其他任务
+	 */
+	@Override
+	public List<Runnable> shutdownNow() {
+		List<Runnable> drained = super.shutdownNow();
+		wakePaused();
+		List<Runnable> others = new ArrayList<Runnable>(drained.size());
+		for (Runnable r : drained) {
+			if (r instanceof WorkItemAttempt) {
+				WorkItemAttempt a = (WorkItemAttempt) r;
+				if (a.cancel(false))
+					WorkItemEvents.cancel(poolName, a.task, a.attemptNo, "shutdownNow");
+				a.run();
+			} else {
+				others.add(r);
+			}
+		}
+		return others;
 	}
 	
+	/**
+	 * 暂停派发：线程执行完当前任务后等待，队列中的任务保留（超时仍会计时）
+	 */
+	public void pause() {
+		pauseLock.lock();
+		try {
+			paused = true;
+		} finally {
+			pauseLock.unlock();
+		}
+	}
+	/**
+	 * 恢复派发
+	 */
+	public void resume() {
+		pauseLock.lock();
+		try {
+			paused = false;
+			unpaused.signalAll();
+		} finally {
+			pauseLock.unlock();
+		}
+	}
+	public boolean isPaused() {
+		return paused;
+	}
+	/**
+	 * 等待队列中和运行中的任务全部结束，不关闭线程池
+	 * @param timeout 最长等待时间
+	 * @param unit 时间单位
+	 * @return 是否已全部结束
+	 * @throws InterruptedException
+	 */
+	public boolean awaitQuiescence(long timeout, TimeUnit unit) throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		while (!getQueue().isEmpty() || getActiveCount() > 0) {
+			if (System.nanoTime() - deadline >= 0L)
+				return false;
+			Thread.sleep(10L);
+		}
+		return true;
+	}
+	/**
+	 * 重设配置的线程池大小，已有的补偿线程数保持叠加
+	 * @param size 线程池大小
+	 */
+	void resize(int size) {
+		synchronized (sizeLock) {
+			configuredCoreSize = size;
+			configuredMaximumSize = size;
+			applySize();
+		}
+	}
+	/**
+	 * 临时增加一个线程（替代被卡住的线程）
+	 */
+	void addCompensation() {
+		synchronized (sizeLock) {
+			compensation++;
+			applySize();
+		}
+		prestartCoreThread();
+	}
+	/**
+	 * 撤销一次临时增加的线程
+	 */
+	void removeCompensation() {
+		synchronized (sizeLock) {
+			if (compensation == 0)
+				return;
+			compensation--;
+			applySize();
+		}
+	}
+	/**
+	 * 按配置大小加补偿线程数设置线程池大小，调用方需持有sizeLock
+	 */
+	private void applySize() {
+		int core = configuredCoreSize + compensation;
+		int max = Math.max(configuredMaximumSize + compensation, Math.max(core, 1));
+		//核心线程数不能大于最大线程数，扩容时先调整最大线程数
+		if (max > getMaximumPoolSize()) {
+			setMaximumPoolSize(max);
+			setCorePoolSize(core);
+		} else {
+			setCorePoolSize(core);
+			setMaximumPoolSize(max);
+		}
+	}
+	/**
+	 * 关闭线程池，同时唤醒暂停中的线程
+	 */
+	@Override
+	public void shutdown() {
+		super.shutdown();
+		wakePaused();
+	}
+	/**
+	 * 唤醒暂停中的线程（不改变暂停状态）
+	 */
+	private void wakePaused() {
+		pauseLock.lock();
+		try {
+			unpaused.signalAll();
+		} finally {
+			pauseLock.unlock();
+		}
+	}
+
 	@Override
 	public void beforeExecute(Thread t, Runnable r) {
+		if (paused) {
+			pauseLock.lock();
+			try {
+				while (paused && !isShutdown()) {
+					unpaused.await();
+				}
+			} catch (InterruptedException ie) {
+				t.interrupt();
+			} finally {
+				pauseLock.unlock();
+			}
+		}
 		super.beforeExecute(t, r);
 		WorkItem w = getWorkItemFromRunnable(r);
 		if (w != null && !w.isBeforeExecuted) {
@@ -140,7 +347,7 @@ public class TCThreadPoolExecutor extends ThreadPoolExecutor {
 		}
 	}
 	/**
-	 * 由于Callable会被线程池销毁所以由Future代为处理
+	 * 由WorkItemExecution处理执行结果；此时r可能已被回收复用，不可再访问其WorkItem
 	 */
 	@Override
 	public void afterExecute(Runnable r, Throwable e) {
@@ -153,7 +360,13 @@ public class TCThreadPoolExecutor extends ThreadPoolExecutor {
 	 */
 	protected WorkItem getWorkItemFromRunnable(Runnable r) {
 		WorkItem w = null;
-		if (r instanceof FutureTask) {
+		if (r instanceof WorkItemAttempt) {
+			//已取消的执行不再触发事件
+			WorkItemAttempt a = (WorkItemAttempt) r;
+			w = a.isNew() ? a.task : null;
+		} else if (r instanceof MyFutureTask) {
+			w = ((MyFutureTask<?>) r).task;
+		} else if (r instanceof FutureTask) {
 			FutureTask<?> fTask = (FutureTask<?>) r;
 			Field fields[] = fTask.getClass().getDeclaredFields();
 			final String propStr = "callable";
@@ -0,0 +1,247 @@
+package com.ly.thread;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按WorkItem类统计CPU时间、运行时间和内存分配
+ * 	开启后线程池线程在每次执行run()（AsyncWorkItem为callAsync()）前后读取当前线程的CPU时间和已分配字节数，
+ * 	按任务类累加到LongAdder表中。CPU时间/运行时间接近1的是计算型任务，远小于1的是阻塞型任务。
+ * 	内存分配依赖HotSpot的com.sun.management.ThreadMXBean，不支持时为-1。
+ * 	统计开销按创建时校准的单次读取耗时乘以读取次数估算，不在每次执行时计时，避免线程被抢占时高估
+ *
+ */
+public class TaskProfiler {
+	/** JVM线程管理接口 **/
+	private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+	/** 是否统计CPU时间 **/
+	private final boolean cpuSupported;
+	/** 是否统计内存分配 **/
+	private final com.sun.management.ThreadMXBean allocation;
+	/** 按任务类的统计 **/
+	private final Map<Class<?>, Stats> table = new ConcurrentHashMap<Class<?>, Stats>();
+	/** 校准读取次数 **/
+	private static final int CALIBRATION_ROUNDS = 2000;
+
+	/** 一次读取CPU时间和已分配字节数的耗时（纳秒）**/
+	private final double probeNanos;
+	/** 已记录的执行次数 **/
+	private final LongAdder recorded = new LongAdder();
+
+	TaskProfiler() {
+		boolean cpu = THREADS.isCurrentThreadCpuTimeSupported();
+		if (cpu && !THREADS.isThreadCpuTimeEnabled())
+			THREADS.setThreadCpuTimeEnabled(true);
+		this.cpuSupported = cpu;
+		com.sun.management.ThreadMXBean mx = null;
+		if (THREADS instanceof com.sun.management.ThreadMXBean) {
+			mx = (com.sun.management.ThreadMXBean) THREADS;
+			if (mx.isThreadAllocatedMemorySupported()) {
+				if (!mx.isThreadAllocatedMemoryEnabled())
+					mx.setThreadAllocatedMemoryEnabled(true);
+			} else {
+				mx = null;
+			}
+		}
+		this.allocation = mx;
+		this.probeNanos = calibrate();
+	}
+
+	/**
+	 * 校准一次读取的耗时，取最快的一批，排除线程被抢占的影响
+	 * @return 纳秒
+	 */
+	private double calibrate() {
+		long sink = 0L;
+		long best = Long.MAX_VALUE;
+		for (int batch = 0; batch < 10; batch++) {
+			long t0 = System.nanoTime();
+			for (int i = 0; i < CALIBRATION_ROUNDS / 10; i++) {
+				sink += cpuTime() + allocatedBytes();
+			}
+			best = Math.min(best, System.nanoTime() - t0);
+		}
+		return sink == 42L ? 0D : (double) best / (CALIBRATION_ROUNDS / 10);
+	}
+
+	/**
+	 * 当前线程的CPU时间
+	 * @return 纳秒，不支持时为0
+	 */
+	long cpuTime() {
+		return cpuSupported ? THREADS.getCurrentThreadCpuTime() : 0L;
+	}
+
+	/**
+	 * 当前线程已分配的字节数
+	 * @return 不支持时为0
+	 */
+	long allocatedBytes() {
+		return allocation != null ? allocation.getThreadAllocatedBytes(Thread.currentThread().getId()) : 0L;
+	}
+
+	/**
+	 * 记录一次执行（在执行线程中调用）
+	 * @param type 任务类
+	 * @param wallNanos 运行时间
+	 * @param cpuStart 开始时的cpuTime()
+	 * @param allocStart 开始时的allocatedBytes()
+	 * @param failed 是否抛出异常
+	 */
+	void record(Class<?> type, long wallNanos, long cpuStart, long allocStart, boolean failed) {
+		long cpu = cpuTime() - cpuStart;
+		long bytes = allocatedBytes() - allocStart;
+		recorded.increment();
+		Stats stats = table.get(type);
+		if (stats == null) {
+			table.putIfAbsent(type, new Stats());
+			stats = table.get(type);
+		}
+		stats.count.increment();
+		if (failed)
+			stats.errors.increment();
+		stats.wallNanos.add(wallNanos);
+		stats.cpuNanos.add(cpu);
+		stats.allocatedBytes.add(bytes);
+	}
+
+	/**
+	 * 各任务类的统计快照，按总运行时间降序
+	 * @return
+	 */
+	public List<Profile> getProfiles() {
+		List<Profile> result = new ArrayList<Profile>(table.size());
+		for (Map.Entry<Class<?>, Stats> e : table.entrySet()) {
+			Stats s = e.getValue();
+			result.add(new Profile(e.getKey(), s.count.sum(), s.errors.sum(), s.wallNanos.sum(),
+					cpuSupported ? s.cpuNanos.sum() : -1L, allocation != null ? s.allocatedBytes.sum() : -1L));
+		}
+		Collections.sort(result, (Profile a, Profile b) -> Long.compare(b.wallNanos, a.wallNanos));
+		return result;
+	}
+
+	/**
+	 * 统计本身的累计耗时估算
+	 * @return 纳秒
+	 */
+	public long getOverheadNanos() {
+		//开始、结束各读取一次
+		return (long) (recorded.sum() * 2L * probeNanos);
+	}
+
+	/**
+	 * 清空统计
+	 */
+	public void reset() {
+		table.clear();
+		recorded.reset();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("%-48s%10s%8s%12s%12s%8s%12s%n", "task", "count", "error", "wall(us)", "cpu(us)", "cpu%", "alloc(B)"));
+		for (Profile p : getProfiles()) {
+			sb.append(String.format("%-48s%10d%8d%12.1f%12.1f%8.1f%12.0f%n", p.taskClass.getName(), p.count, p.errors,
+					p.getAvgWallMicros(), p.getAvgCpuMicros(), p.getCpuRatio() * 100D, p.getAvgAllocatedBytes()));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * 累加器
+	 *
+	 */
+	private static final class Stats {
+		final LongAdder count = new LongAdder();
+		final LongAdder errors = new LongAdder();
+		final LongAdder wallNanos = new LongAdder();
+		final LongAdder cpuNanos = new LongAdder();
+		final LongAdder allocatedBytes = new LongAdder();
+	}
+
+	/**
+	 * 一个任务类的统计
+	 *
+	 */
+	public static final class Profile {
+		private final Class<?> taskClass;
+		private final long count;
+		private final long errors;
+		private final long wallNanos;
+		private final long cpuNanos;
+		private final long allocatedBytes;
+
+		Profile(Class<?> taskClass, long count, long errors, long wallNanos, long cpuNanos, long allocatedBytes) {
+			this.taskClass = taskClass;
+			this.count = count;
+			this.errors = errors;
+			this.wallNanos = wallNanos;
+			this.cpuNanos = cpuNanos;
+			this.allocatedBytes = allocatedBytes;
+		}
+
+		public Class<?> getTaskClass() {
+			return taskClass;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		public long getErrorCount() {
+			return errors;
+		}
+
+		/**
+		 * 总运行时间
+		 * @return 纳秒
+		 */
+		public long getWallNanos() {
+			return wallNanos;
+		}
+
+		/**
+		 * 总CPU时间
+		 * @return 纳秒，不支持时为-1
+		 */
+		public long getCpuNanos() {
+			return cpuNanos;
+		}
+
+		/**
+		 * 总分配字节数
+		 * @return 不支持时为-1
+		 */
+		public long getAllocatedBytes() {
+			return allocatedBytes;
+		}
+
+		public double getAvgWallMicros() {
+			return count == 0L ? 0D : wallNanos / 1000D / count;
+		}
+
+		public double getAvgCpuMicros() {
+			return count == 0L || cpuNanos < 0L ? -1D : cpuNanos / 1000D / count;
+		}
+
+		/**
+		 * CPU时间占运行时间的比例
+		 * @return 不支持时为-1
+		 */
+		public double getCpuRatio() {
+			return wallNanos == 0L || cpuNanos < 0L ? -1D : (double) cpuNanos / wallNanos;
+		}
+
+		public double getAvgAllocatedBytes() {
+			return count == 0L || allocatedBytes < 0L ? -1D : (double) allocatedBytes / count;
+		}
+	}
+}
@@ -1,6 +1,11 @@
 package com.ly.thread;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
 import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * 线程任务
@@ -8,6 +13,7 @@ import java.util.concurrent.TimeUnit;
  *
  */
 public class WorkItem extends Thread {
+	private static final Logger LOGGER = Logger.getLogger(WorkItem.class.getName());
 	/**
 	 * 运行状态
 	 *
@@ -26,6 +32,8 @@ public class WorkItem extends Thread {
 	private TimeUnit timeUnit = TimeUnit.MILLISECONDS;
 	/** 重试次数**/
 	private int retryTimes = 0;
+	/** 对冲执行策略（为null表示不对冲）**/
+	private HedgePolicy hedgePolicy;
 	/** 运行状态**/
 	RunStatusOfWorkItem runningStatus = RunStatusOfWorkItem.STATUS_READY;
 	/** 耗时时长（毫秒）**/
@@ -37,6 +45,16 @@ public class WorkItem extends Thread {
 	boolean isBeforeExecuted = false;
 	/** 临时保存的开始时间的毫秒数**/
 	private long tempStart;
+	/** 完成回调锁（WorkItem是Thread，不使用this作为锁）**/
+	private final Object listenerLock = new Object();
+	/** 完成回调 **/
+	private List<WorkItemListener> listeners;
+	/** 完成回调是否已触发 **/
+	private boolean completionFired = false;
+	/** 是否仍被WorkItemExecution持有（结束后超时的执行可能仍在运行）**/
+	private boolean executing = false;
+	/** 结束且所有执行都已退出后的回调 **/
+	private WorkItemListener quiescenceListener;
 	
 	public WorkItem(){}
 	
@@ -78,8 +96,88 @@ public class WorkItem extends Thread {
 			this.afterExecute(this.thrown);
 		} finally {
 			this.tempStart = 0L;
+			fireCompletion();
 		}
 	}
+	/**
+	 * 触发完成回调，某个回调抛出的异常记录日志后继续调用其余回调
+	 */
+	void fireCompletion() {
+		List<WorkItemListener> ls;
+		synchronized (listenerLock) {
+			completionFired = true;
+			ls = listeners;
+			listeners = null;
+		}
+		if (ls != null) {
+			for (WorkItemListener l : ls) {
+				try {
+					l.onComplete(this);
+				} catch (RuntimeException e) {
+					LOGGER.log(Level.WARNING, "任务" + getName() + "的完成回调" + l + "异常", e);
+				}
+			}
+		}
+		fireQuiescence();
+	}
+	/**
+	 * 设置结束且所有执行都已退出后的回调（只能设置一个），条件已满足时在当前线程立即回调
+	 * 	与完成回调不同，超时后忽略中断仍在运行的执行退出前不会回调
+	 * @param listener 回调
+	 */
+	void setQuiescenceListener(WorkItemListener listener) {
+		synchronized (listenerLock) {
+			quiescenceListener = Objects.requireNonNull(listener);
+		}
+		fireQuiescence();
+	}
+	/**
+	 * WorkItemExecution开始持有本任务
+	 */
+	void attachExecution() {
+		synchronized (listenerLock) {
+			executing = true;
+		}
+	}
+	/**
+	 * WorkItemExecution的所有执行都已退出，不再持有本任务
+	 */
+	void detachExecution() {
+		synchronized (listenerLock) {
+			executing = false;
+		}
+		fireQuiescence();
+	}
+	/**
+	 * 已结束且没有仍在运行的执行时触发一次回调
+	 */
+	private void fireQuiescence() {
+		WorkItemListener l;
+		synchronized (listenerLock) {
+			if (!completionFired || executing || quiescenceListener == null)
+				return;
+			l = quiescenceListener;
+			quiescenceListener = null;
+		}
+		l.onComplete(this);
+	}
+	/**
+	 * 添加完成回调，若已运行完毕则在当前线程立即回调
+	 * 	回调在监听线程中执行，应尽量轻量，耗时的后续任务请再提交到线程池
+	 * @param listener 回调
+	 */
+	public void addCompletionListener(WorkItemListener listener) {
+		Objects.requireNonNull(listener);
+		synchronized (listenerLock) {
+			if (!completionFired) {
+				if (listeners == null)
+					listeners = new ArrayList<WorkItemListener>(2);
+				listeners.add(listener);
+				return;
+			}
+		}
+		listener.onComplete(this);
+	}
 	/**
 	 * 设置结束运行
 	 */
@@ -88,6 +186,42 @@ public class WorkItem extends Thread {
 		setOver();
 	}
 	
+	/**
+	 * 结果缓存key，管理器开启结果缓存时，key相同且未过期的任务直接以缓存结果成功结束，不再执行
+	 * 	默认返回null表示不缓存，仅幂等任务应返回key
+	 * @return
+	 */
+	public Object getCacheKey() {
+		return null;
+	}
+	
+	/**
+	 * 任务分组，管理器开启分组熔断时，每个分组使用独立的熔断器
+	 * 	默认返回null表示使用管理器的默认熔断器
+	 * @return
+	 */
+	public String getTaskGroup() {
+		return null;
+	}
+	
+	/**
+	 * 租户（或流）ID，线程队列类型为WorkQueueType.FAIR时，不同租户的任务按权重轮流执行
+	 * 	默认返回null表示FairWorkQueue.DEFAULT_TENANT
+	 * @return
+	 */
+	public String getTenant() {
+		return null;
+	}
+	
+	/**
+	 * 负载保护时的优先级，管理器以LoadShedder.Mode.PRIORITY开启负载保护时，过载期间优先级低的新任务先被丢弃
+	 * 	默认返回0，即持续过载的第一个区间就会被丢弃
+	 * @return
+	 */
+	public int getShedPriority() {
+		return 0;
+	}
+	
 	/**
 	 * 是否设置Timeout功能
 	 * @return
@@ -155,6 +289,18 @@ public class WorkItem extends Thread {
 		this.retryTimes = retryTimes;
 	}
 
+	public HedgePolicy getHedgePolicy() {
+		return hedgePolicy;
+	}
+
+	/**
+	 * 设置对冲执行策略，仅适用于可并发执行的幂等任务
+	 * @param hedgePolicy
+	 */
+	public void setHedgePolicy(HedgePolicy hedgePolicy) {
+		this.hedgePolicy = hedgePolicy;
+	}
+
 	public RunStatusOfWorkItem getRunningStatus() {
 		return runningStatus;
 	}
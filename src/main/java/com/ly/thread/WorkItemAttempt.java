@@ -0,0 +1,225 @@
+package com.ly.thread;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.function.BiConsumer;
+
+/**
+ * WorkItem的一次执行（首次、重试或对冲），由线程池执行，可复用
+ * 	替代每次执行新建的CallableAdapter + FutureTask：run()结束后回调所属的WorkItemExecution，
+ * 	之后由线程池回收，因此只能在run()结束前通过它访问WorkItem。
+ * 	AsyncWorkItem的callAsync()返回后立即释放线程池线程，本对象作为回调注册到返回的CompletionStage上，stage完成时才结束本次执行
+ *
+ */
+final class WorkItemAttempt implements Runnable, BiConsumer<Object, Throwable> {
+	static final int NEW = 0;
+	static final int RUNNING = 1;
+	static final int DONE = 2;
+	static final int CANCELLED = 3;
+	static final int INTERRUPTING = 4;
+	static final int INTERRUPTED = 5;
+	private static final AtomicIntegerFieldUpdater<WorkItemAttempt> STATE =
+			AtomicIntegerFieldUpdater.newUpdater(WorkItemAttempt.class, "state");
+
+	/** 状态 **/
+	private volatile int state;
+	/** 执行线程 **/
+	private volatile Thread runner;
+	/** AsyncWorkItem尚未完成的stage **/
+	private volatile CompletionStage<?> stage;
+	/** 开始运行时间 **/
+	private long startNanos;
+	/** 所属执行 **/
+	WorkItemExecution execution;
+	/** 线程任务 **/
+	WorkItem task;
+	/** 所属轮次（首次执行或某次重试）**/
+	long round;
+	/** 第几次执行（从1开始，包括对冲）**/
+	int attemptNo;
+	/** 入队时间（System.nanoTime）**/
+	long enqueueNanos;
+	/** 是否在运行中被取消且run()尚未返回（持有所属执行的锁访问）**/
+	boolean zombie;
+
+	/**
+	 * 初始化
+	 * @param execution 所属执行
+	 * @param task 线程任务
+	 * @param round 所属轮次
+	 * @param attemptNo 第几次执行
+	 */
+	void init(WorkItemExecution execution, WorkItem task, long round, int attemptNo) {
+		this.execution = execution;
+		this.task = task;
+		this.round = round;
+		this.attemptNo = attemptNo;
+		this.enqueueNanos = System.nanoTime();
+		this.zombie = false;
+		this.state = NEW;
+	}
+
+	/**
+	 * 回收前清理
+	 */
+	void clear() {
+		this.execution = null;
+		this.task = null;
+		this.runner = null;
+		this.stage = null;
+	}
+
+	/**
+	 * 是否尚未开始且未被取消
+	 * @return
+	 */
+	boolean isNew() {
+		return state == NEW;
+	}
+
+	@Override
+	public void run() {
+		WorkItemExecution e = execution;
+		if (!STATE.compareAndSet(this, NEW, RUNNING)) {
+			//开始前已被取消
+			e.onAttemptDone(this, null, null, true);
+			return;
+		}
+		runner = Thread.currentThread();
+		long start = System.nanoTime();
+		startNanos = start;
+		LoadShedder shedder = e.loadShedder();
+		if (shedder != null)
+			shedder.onDequeue(start - enqueueNanos);
+		WorkItemEvents.start(e.poolName(), task, attemptNo, start - enqueueNanos);
+		StuckTaskWatchdog watchdog = e.watchdog();
+		if (watchdog != null)
+			watchdog.begin(this, start);
+		TaskProfiler profiler = e.profiler();
+		long cpuStart = 0L;
+		long allocStart = 0L;
+		if (profiler != null) {
+			cpuStart = profiler.cpuTime();
+			allocStart = profiler.allocatedBytes();
+		}
+		Object value = null;
+		Throwable error = null;
+		CompletionStage<?> pending = null;
+		try {
+			if (task instanceof AsyncWorkItem) {
+				pending = ((AsyncWorkItem<?>) task).callAsync();
+				if (pending == null)
+					throw new NullPointerException("callAsync()返回null");
+			} else if (task instanceof CallableWorkItem) {
+				value = ((CallableWorkItem<?>) task).call();
+			} else {
+				task.run();
+			}
+		} catch (Throwable x) {
+			error = x;
+		} finally {
+			runner = null;
+		}
+		if (profiler != null)
+			profiler.record(task.getClass(), System.nanoTime() - start, cpuStart, allocStart, error != null);
+		if (watchdog != null)
+			watchdog.end(this, System.nanoTime() - start);
+		if (pending != null) {
+			//释放线程池线程，stage完成时由accept()结束本次执行
+			if (!isRunning())
+				clearInterrupt();
+			stage = pending;
+			if (!isRunning())
+				cancelStage(pending);
+			pending.whenComplete(this);
+			return;
+		}
+		finish(value, error, true);
+	}
+
+	/**
+	 * AsyncWorkItem的stage完成
+	 */
+	@Override
+	public void accept(Object value, Throwable error) {
+		if (error instanceof CompletionException && error.getCause() != null)
+			error = error.getCause();
+		finish(value, error, false);
+	}
+
+	/**
+	 * 结束本次执行
+	 * @param value 执行结果
+	 * @param error 执行异常
+	 * @param onRunner 是否在执行线程中（需要清除取消时的中断标记）
+	 */
+	private void finish(Object value, Throwable error, boolean onRunner) {
+		WorkItemExecution e = execution;
+		boolean cancelled = !STATE.compareAndSet(this, RUNNING, DONE);
+		if (cancelled && onRunner)
+			clearInterrupt();
+		WorkItemEvents.attemptEnd(e.poolName(), task, attemptNo, System.nanoTime() - startNanos, error, cancelled);
+		e.onAttemptDone(this, value, error, cancelled);
+	}
+
+	/**
+	 * 等待cancel中的interrupt完成，并清除中断标记，避免影响线程池中的下一个任务
+	 */
+	private void clearInterrupt() {
+		while (state == INTERRUPTING) {
+			Thread.yield();
+		}
+		Thread.interrupted();
+	}
+
+	private boolean isRunning() {
+		return state == RUNNING;
+	}
+
+	/**
+	 * 取消AsyncWorkItem的stage（仅对CompletableFuture有效），完成回调会在当前线程中执行
+	 * @param s
+	 */
+	private static void cancelStage(CompletionStage<?> s) {
+		try {
+			s.toCompletableFuture().cancel(false);
+		} catch (UnsupportedOperationException e) {}
+	}
+
+	/**
+	 * 是否在运行中被取消（中断）
+	 * @return
+	 */
+	boolean isInterrupted() {
+		int s = state;
+		return s == INTERRUPTING || s == INTERRUPTED;
+	}
+
+	/**
+	 * 取消本次执行
+	 * @param mayInterruptIfRunning 运行中时是否中断执行线程
+	 * @return 是否由本次调用取消
+	 */
+	boolean cancel(boolean mayInterruptIfRunning) {
+		if (STATE.compareAndSet(this, NEW, CANCELLED))
+			return true;
+		if (!mayInterruptIfRunning)
+			return STATE.compareAndSet(this, RUNNING, CANCELLED);
+		if (!STATE.compareAndSet(this, RUNNING, INTERRUPTING))
+			return false;
+		try {
+			Thread t = runner;
+			if (t != null)
+				t.interrupt();
+		} finally {
+			state = INTERRUPTED;
+		}
+		//调用方可能持有所属执行的锁，stage的完成回调不能在当前线程中执行
+		final CompletionStage<?> s = stage;
+		if (s != null)
+			ForkJoinPool.commonPool().execute(() -> cancelStage(s));
+		return true;
+	}
+}
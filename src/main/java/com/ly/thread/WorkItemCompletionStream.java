@@ -0,0 +1,111 @@
+package com.ly.thread;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按完成顺序消费一批WorkItem
+ * 	每个WorkItem运行完毕（成功或错误）后即可取出，取出时其runningStatus、tokenTime、thrown均已确定，
+ * 	后续处理可以与剩余任务的执行重叠，不必等待整批任务结束
+ *
+ */
+public class WorkItemCompletionStream implements WorkItemListener, Iterator<WorkItem>, Iterable<WorkItem> {
+	/** 已完成、待取出的任务 **/
+	private final BlockingQueue<WorkItem> completed = new LinkedBlockingQueue<WorkItem>();
+	/** 本批任务总数 **/
+	private final int total;
+	/** 已取出的任务数（仅消费线程访问）**/
+	private int taken = 0;
+
+	WorkItemCompletionStream(int total) {
+		this.total = total;
+	}
+
+	@Override
+	public void onComplete(WorkItem task) {
+		completed.offer(task);
+	}
+
+	/**
+	 * 取出下一个完成的任务，没有则等待
+	 * @return 已完成的任务
+	 * @throws InterruptedException
+	 * @throws NoSuchElementException 本批任务已全部取出
+	 */
+	public WorkItem take() throws InterruptedException {
+		if (!hasNext())
+			throw new NoSuchElementException("本批任务已全部取出");
+		WorkItem w = completed.take();
+		taken++;
+		return w;
+	}
+
+	/**
+	 * 在指定时间内取出下一个完成的任务
+	 * @param timeout 超时时间
+	 * @param unit 时间单位
+	 * @return 已完成的任务，超时或已全部取出时返回null
+	 * @throws InterruptedException
+	 */
+	public WorkItem poll(long timeout, TimeUnit unit) throws InterruptedException {
+		if (!hasNext())
+			return null;
+		WorkItem w = completed.poll(timeout, unit);
+		if (w != null)
+			taken++;
+		return w;
+	}
+
+	/**
+	 * 取出下一个已完成的任务，不等待
+	 * @return 已完成的任务，没有则返回null
+	 */
+	public WorkItem poll() {
+		WorkItem w = completed.poll();
+		if (w != null)
+			taken++;
+		return w;
+	}
+
+	@Override
+	public boolean hasNext() {
+		return taken < total;
+	}
+
+	/**
+	 * 阻塞取出下一个完成的任务，等待中被中断时抛出IllegalStateException并保留中断标记
+	 */
+	@Override
+	public WorkItem next() {
+		try {
+			return take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("等待任务完成时被中断", e);
+		}
+	}
+
+	@Override
+	public Iterator<WorkItem> iterator() {
+		return this;
+	}
+
+	/**
+	 * 本批任务总数
+	 * @return
+	 */
+	public int getTotal() {
+		return total;
+	}
+
+	/**
+	 * 尚未取出的任务数（包括未完成的）
+	 * @return
+	 */
+	public int getRemaining() {
+		return total - taken;
+	}
+}
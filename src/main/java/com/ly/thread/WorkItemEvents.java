@@ -0,0 +1,223 @@
+package com.ly.thread;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * WorkItem生命周期的JFR事件
+ * 	事件默认关闭，需在录制配置中开启，如：jcmd <pid> JFR.start settings=profile +com.ly.thread.WorkItemStart#enabled=true，
+ * 	或在.jfc文件中开启com.ly.thread.*事件。未启动JFR时每个埋点只有一次静态判断，不创建事件对象
+ *
+ */
+final class WorkItemEvents {
+	/** 执行类型：首次执行 **/
+	static final String KIND_FIRST = "first";
+	/** 执行类型：重试 **/
+	static final String KIND_RETRY = "retry";
+	/** 执行类型：对冲 **/
+	static final String KIND_HEDGE = "hedge";
+
+	private WorkItemEvents() {}
+
+	/**
+	 * JFR是否已启动
+	 * @return
+	 */
+	static boolean isRecording() {
+		return FlightRecorder.isInitialized();
+	}
+
+	static void enqueue(String pool, WorkItem task, int attempt, String kind) {
+		if (!isRecording())
+			return;
+		EnqueueEvent e = new EnqueueEvent();
+		if (!e.isEnabled())
+			return;
+		e.pool = pool;
+		e.taskClass = task.getClass();
+		e.attempt = attempt;
+		e.kind = kind;
+		e.commit();
+	}
+
+	static void start(String pool, WorkItem task, int attempt, long queueNanos) {
+		if (!isRecording())
+			return;
+		StartEvent e = new StartEvent();
+		if (!e.isEnabled())
+			return;
+		e.pool = pool;
+		e.taskClass = task.getClass();
+		e.attempt = attempt;
+		e.queueTime = queueNanos;
+		e.commit();
+	}
+
+	static void attemptEnd(String pool, WorkItem task, int attempt, long runNanos, Throwable error, boolean cancelled) {
+		if (!isRecording())
+			return;
+		AttemptEndEvent e = new AttemptEndEvent();
+		if (!e.isEnabled())
+			return;
+		e.pool = pool;
+		e.taskClass = task.getClass();
+		e.attempt = attempt;
+		e.runTime = runNanos;
+		e.outcome = cancelled ? "cancelled" : error == null ? "success" : "error";
+		e.error = error == null ? null : error.getClass().getName();
+		e.commit();
+	}
+
+	static void retry(String pool, WorkItem task, int nextAttempt, Throwable cause) {
+		if (!isRecording())
+			return;
+		RetryEvent e = new RetryEvent();
+		if (!e.isEnabled())
+			return;
+		e.pool = pool;
+		e.taskClass = task.getClass();
+		e.attempt = nextAttempt;
+		e.cause = cause == null ? null : cause.getClass().getName();
+		e.commit();
+	}
+
+	static void timeout(String pool, WorkItem task, int attempt, long timeoutNanos) {
+		if (!isRecording())
+			return;
+		TimeoutEvent e = new TimeoutEvent();
+		if (!e.isEnabled())
+			return;
+		e.pool = pool;
+		e.taskClass = task.getClass();
+		e.attempt = attempt;
+		e.timeout = timeoutNanos;
+		e.commit();
+	}
+
+	static void cancel(String pool, WorkItem task, int attempt, String reason) {
+		if (!isRecording())
+			return;
+		CancelEvent e = new CancelEvent();
+		if (!e.isEnabled())
+			return;
+		e.pool = pool;
+		e.taskClass = task.getClass();
+		e.attempt = attempt;
+		e.reason = reason;
+		e.commit();
+	}
+
+	static void complete(String pool, WorkItem task, int attempts, long totalNanos, Throwable thrown) {
+		if (!isRecording())
+			return;
+		CompleteEvent e = new CompleteEvent();
+		if (!e.isEnabled())
+			return;
+		e.pool = pool;
+		e.taskClass = task.getClass();
+		e.attempts = attempts;
+		e.totalTime = totalNanos;
+		e.status = thrown == null ? "STATUS_SUCCESS" : "STATUS_ERROR";
+		e.error = thrown == null ? null : thrown.getClass().getName();
+		e.commit();
+	}
+
+	@Category({"MyThread", "WorkItem"})
+	@Enabled(false)
+	@StackTrace(false)
+	abstract static class WorkItemEvent extends Event {
+		@Label("Pool")
+		String pool;
+		@Label("Task Class")
+		Class<?> taskClass;
+	}
+
+	@Name("com.ly.thread.WorkItemEnqueue")
+	@Label("WorkItem Enqueue")
+	@Description("一次执行（首次、重试或对冲）进入线程池队列")
+	static class EnqueueEvent extends WorkItemEvent {
+		@Label("Attempt")
+		int attempt;
+		@Label("Kind")
+		String kind;
+	}
+
+	@Name("com.ly.thread.WorkItemStart")
+	@Label("WorkItem Start")
+	@Description("一次执行开始运行")
+	static class StartEvent extends WorkItemEvent {
+		@Label("Attempt")
+		int attempt;
+		@Label("Queue Time")
+		@Timespan(Timespan.NANOSECONDS)
+		long queueTime;
+	}
+
+	@Name("com.ly.thread.WorkItemAttemptEnd")
+	@Label("WorkItem Attempt End")
+	@Description("一次执行运行结束")
+	static class AttemptEndEvent extends WorkItemEvent {
+		@Label("Attempt")
+		int attempt;
+		@Label("Run Time")
+		@Timespan(Timespan.NANOSECONDS)
+		long runTime;
+		@Label("Outcome")
+		String outcome;
+		@Label("Error")
+		String error;
+	}
+
+	@Name("com.ly.thread.WorkItemRetry")
+	@Label("WorkItem Retry")
+	@Description("上一次执行失败，开始重试")
+	static class RetryEvent extends WorkItemEvent {
+		@Label("Attempt")
+		int attempt;
+		@Label("Cause")
+		String cause;
+	}
+
+	@Name("com.ly.thread.WorkItemTimeout")
+	@Label("WorkItem Timeout")
+	@Description("一次执行超时")
+	static class TimeoutEvent extends WorkItemEvent {
+		@Label("Attempt")
+		int attempt;
+		@Label("Timeout")
+		@Timespan(Timespan.NANOSECONDS)
+		long timeout;
+	}
+
+	@Name("com.ly.thread.WorkItemCancel")
+	@Label("WorkItem Cancel")
+	@Description("一次执行被取消")
+	static class CancelEvent extends WorkItemEvent {
+		@Label("Attempt")
+		int attempt;
+		@Label("Reason")
+		String reason;
+	}
+
+	@Name("com.ly.thread.WorkItemComplete")
+	@Label("WorkItem Complete")
+	@Description("WorkItem最终结束")
+	static class CompleteEvent extends WorkItemEvent {
+		@Label("Attempts")
+		int attempts;
+		@Label("Total Time")
+		@Timespan(Timespan.NANOSECONDS)
+		long totalTime;
+		@Label("Status")
+		String status;
+		@Label("Error")
+		String error;
+	}
+}
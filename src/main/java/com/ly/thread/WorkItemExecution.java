@@ -0,0 +1,418 @@
+package com.ly.thread;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 一次doExecute的执行过程：首次执行、超时、重试、对冲，可复用
+ * 	不再为每个WorkItem启动监听线程阻塞等待Future：执行结束由WorkItemAttempt回调，超时和对冲由ExecutionTimer回调，
+ * 	状态变更都在本对象的锁内完成；每一轮（首次执行或一次重试）有唯一递增的轮次号，过期的回调按轮次号忽略。
+ * 	超时或失败时仍在运行的执行（忽略中断）记为僵尸执行，重试要等本WorkItem的僵尸执行全部退出后才提交，
+ * 	保证同一WorkItem的重试不会与上一次执行并发运行；设置了超时的任务最多再等待一个超时时间，仍未退出则不再重试，以上一次的错误结束。
+ * 	所有执行都结束（包括被取消但仍在运行的）且WorkItem已结束后，本对象被线程池回收
+ *
+ */
+final class WorkItemExecution {
+	/** 线程池 **/
+	private final TCThreadPoolExecutor executor;
+	/** 超时定时项 **/
+	private final ExecutionTimer.TimerNode timeoutNode = new ExecutionTimer.TimerNode() {
+		@Override
+		void onTimer(long tag) {
+			onTimeout(tag);
+		}
+	};
+	/** 对冲定时项 **/
+	private final ExecutionTimer.TimerNode hedgeNode = new ExecutionTimer.TimerNode() {
+		@Override
+		void onTimer(long tag) {
+			onHedge(tag);
+		}
+	};
+	/** 超时后结束WorkItem，在定时器的completer线程池中执行 **/
+	private final Runnable completer = this::complete;
+	/** 轮次号，复用时也不重置，保证过期回调不会匹配 **/
+	private long round = 0L;
+
+	/******* 每次执行的数据 *********************/
+	private WorkItem task;
+	private boolean timed;
+	private long timeoutNanos;
+	private HedgePolicy hedgePolicy;
+	/** 剩余重试次数 **/
+	private int retriesLeft;
+	/** doExecute时间 **/
+	private long startNanos;
+	/** 已提交的执行次数（包括对冲）**/
+	private int attempts;
+	/** 本轮开始时间 **/
+	private long roundStart;
+	/** 本轮主执行 **/
+	private WorkItemAttempt primary;
+	/** 本轮对冲执行 **/
+	private WorkItemAttempt hedge;
+	/** 本轮尚未结束的执行数 **/
+	private int active;
+	/** 已被取消但run()尚未返回的执行数 **/
+	private int zombies;
+	/** 是否有等待僵尸执行退出的重试 **/
+	private boolean retryPending;
+	/** 本轮最后一个错误 **/
+	private Throwable lastError;
+	/** 已提交但run()尚未结束的执行数（包括已取消的）**/
+	private int outstanding;
+	/** 是否已决定最终结果 **/
+	private boolean finished;
+	/** WorkItem是否已结束（setOver已调用）**/
+	private boolean over;
+
+	WorkItemExecution(TCThreadPoolExecutor executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * 开始执行，首次提交被拒绝时抛出RejectedExecutionException，WorkItem保持原状态
+	 * @param task 线程任务
+	 */
+	void start(WorkItem task) {
+		RejectedExecutionException rejected = null;
+		task.attachExecution();
+		synchronized (this) {
+			this.task = task;
+			this.timed = task.isTimeoutFuncSet();
+			this.timeoutNanos = timed ? task.getTimeUnit().toNanos(task.getTimeout()) : 0L;
+			this.hedgePolicy = task.getHedgePolicy();
+			this.retriesLeft = Math.max(task.getRetryTimes(), 0);
+			this.finished = false;
+			this.over = false;
+			this.retryPending = false;
+			this.lastError = null;
+			this.startNanos = System.nanoTime();
+			this.attempts = 0;
+			nextRound();
+			primary = launchPrimary(WorkItemEvents.KIND_FIRST);
+			if (primary == null) {
+				rejected = (RejectedExecutionException) lastError;
+			} else {
+				scheduleTimers();
+			}
+		}
+		if (rejected != null) {
+			recycle();
+			throw rejected;
+		}
+	}
+
+	/**
+	 * 进入新的一轮，需持有锁
+	 */
+	private void nextRound() {
+		round++;
+		roundStart = System.nanoTime();
+		primary = null;
+		hedge = null;
+		active = 0;
+	}
+
+	/**
+	 * 调度本轮的超时和对冲，需持有锁
+	 */
+	private void scheduleTimers() {
+		if (timed)
+			ExecutionTimer.getInstance().schedule(timeoutNode, roundStart + timeoutNanos, round);
+		if (hedgePolicy != null) {
+			hedgePolicy.recordPrimary();
+			long delay = hedgePolicy.hedgeDelayNanos(executor.latencyRecorder);
+			if (delay >= 0L)
+				ExecutionTimer.getInstance().schedule(hedgeNode, roundStart + delay, round);
+		}
+	}
+
+	/**
+	 * 提交本轮的主执行，需持有锁
+	 * @param kind 执行类型（首次、重试）
+	 * @return 提交被拒绝时返回null，lastError为拒绝异常
+	 */
+	private WorkItemAttempt launchPrimary(String kind) {
+		try {
+			return launch(kind);
+		} catch (RejectedExecutionException e) {
+			lastError = e;
+			return null;
+		}
+	}
+
+	/**
+	 * 提交本轮的一次执行，需持有锁
+	 * @param kind 执行类型（首次、重试、对冲）
+	 * @return 执行
+	 * @throws RejectedExecutionException 提交被拒绝
+	 */
+	private WorkItemAttempt launch(String kind) {
+		WorkItemAttempt attempt = executor.acquireAttempt();
+		attempt.init(this, task, round, attempts + 1);
+		outstanding++;
+		try {
+			executor.execute(attempt);
+		} catch (RejectedExecutionException e) {
+			outstanding--;
+			executor.releaseAttempt(attempt);
+			throw e;
+		}
+		attempts++;
+		active++;
+		WorkItemEvents.enqueue(poolName(), task, attempts, kind);
+		return attempt;
+	}
+
+	/**
+	 * 线程池名称
+	 * @return
+	 */
+	String poolName() {
+		return executor.getPoolName();
+	}
+
+	/**
+	 * 线程池的负载保护
+	 * @return 未开启时返回null
+	 */
+	LoadShedder loadShedder() {
+		return executor.loadShedder;
+	}
+
+	/**
+	 * 线程池的卡住任务看门狗
+	 * @return 未开启时返回null
+	 */
+	StuckTaskWatchdog watchdog() {
+		return executor.watchdog;
+	}
+
+	/**
+	 * 线程池的任务统计
+	 * @return 未开启时返回null
+	 */
+	TaskProfiler profiler() {
+		return executor.profiler;
+	}
+
+	/**
+	 * 一次执行的run()结束
+	 * @param attempt 执行
+	 * @param value 执行结果
+	 * @param error 执行异常
+	 * @param cancelled 是否已被取消
+	 */
+	void onAttemptDone(WorkItemAttempt attempt, Object value, Throwable error, boolean cancelled) {
+		boolean finishNow = false;
+		boolean recycle;
+		synchronized (this) {
+			outstanding--;
+			//已结束的执行会被回收复用，不能再保留引用
+			if (attempt == primary)
+				primary = null;
+			else if (attempt == hedge)
+				hedge = null;
+			if (attempt.zombie) {
+				zombies--;
+				executor.zombieCount.decrementAndGet();
+				if (!finished && retryPending && zombies == 0) {
+					retryPending = false;
+					finishNow = retry();
+				}
+			} else if (!finished && !retryPending && attempt.round == round) {
+				active--;
+				if (!cancelled && error == null) {
+					executor.latencyRecorder.recordNanos(System.nanoTime() - roundStart);
+					if (task instanceof CallableWorkItem)
+						((CallableWorkItem<?>) task).setResult(value);
+					lastError = null;
+					cancelRound("lost");
+					finished = true;
+					finishNow = true;
+				} else {
+					lastError = cancelled ? new CancellationException() : new ExecutionException(error);
+					if (active == 0)
+						finishNow = roundFailed();
+				}
+			}
+			recycle = over && outstanding == 0;
+		}
+		executor.releaseAttempt(attempt);
+		if (finishNow)
+			complete();
+		if (recycle)
+			recycle();
+	}
+
+	/**
+	 * 本轮超时
+	 * @param tag 轮次号
+	 */
+	private void onTimeout(long tag) {
+		boolean finishNow;
+		synchronized (this) {
+			if (finished || tag != round)
+				return;
+			if (retryPending) {
+				//僵尸执行在等待期内仍未退出，放弃重试
+				retryPending = false;
+				finished = true;
+				finishNow = true;
+			} else {
+				finishNow = timedOut();
+			}
+		}
+		//setOver会执行用户代码，不能占用定时器线程
+		if (finishNow)
+			ExecutionTimer.getInstance().execute(completer);
+	}
+
+	/**
+	 * 本轮超时，需持有锁
+	 * @return 是否已失败结束
+	 */
+	private boolean timedOut() {
+		executor.timedOutCount.incrementAndGet();
+		WorkItemEvents.timeout(poolName(), task, attempts, timeoutNanos);
+		cancelRound("timeout");
+		lastError = new TimeoutException();
+		return roundFailed();
+	}
+
+	/**
+	 * 到达对冲延迟：主执行仍未结束则发起对冲执行
+	 * @param tag 轮次号
+	 */
+	private void onHedge(long tag) {
+		synchronized (this) {
+			if (finished || tag != round || hedge != null || active == 0)
+				return;
+			if (!hedgePolicy.tryAcquireHedge())
+				return;
+			try {
+				hedge = launch(WorkItemEvents.KIND_HEDGE);
+			} catch (RejectedExecutionException e) {
+				//对冲被拒绝不影响主执行的结果，归还配额
+				hedgePolicy.releaseHedge();
+			}
+		}
+	}
+
+	/**
+	 * 结束本轮：取消定时项和仍在运行的执行，需持有锁
+	 * @param reason 取消原因
+	 */
+	private void cancelRound(String reason) {
+		ExecutionTimer timer = ExecutionTimer.getInstance();
+		if (timed)
+			timer.cancel(timeoutNode);
+		if (hedgePolicy != null)
+			timer.cancel(hedgeNode);
+		if (primary != null)
+			cancelAttempt(primary, reason);
+		if (hedge != null)
+			cancelAttempt(hedge, reason);
+		primary = null;
+		hedge = null;
+		active = 0;
+	}
+
+	/**
+	 * 取消一次执行，运行中的记为僵尸执行，需持有锁
+	 * 	执行可能已被StuckTaskWatchdog中断（cancel返回false），只要尚未结束同样记为僵尸执行，避免重试与其重叠
+	 * @param attempt 执行
+	 * @param reason 取消原因
+	 */
+	private void cancelAttempt(WorkItemAttempt attempt, String reason) {
+		if (attempt.cancel(true))
+			WorkItemEvents.cancel(poolName(), task, attempt.attemptNo, reason);
+		//run()返回前需要本对象的锁，此时状态不会再变化
+		if (attempt.isInterrupted() && !attempt.zombie) {
+			attempt.zombie = true;
+			zombies++;
+			executor.zombieCount.incrementAndGet();
+		}
+	}
+
+	/**
+	 * 本轮失败：有剩余重试次数则开始下一轮，需持有锁
+	 * 	本WorkItem仍有僵尸执行时推迟重试，设置了超时的任务最多等待一个超时时间
+	 * @return 是否已失败结束
+	 */
+	private boolean roundFailed() {
+		cancelRound("failed");
+		if (retriesLeft > 0 && zombies > 0) {
+			retryPending = true;
+			executor.deferredRetryCount.incrementAndGet();
+			if (timed)
+				ExecutionTimer.getInstance().schedule(timeoutNode, System.nanoTime() + timeoutNanos, round);
+			return false;
+		}
+		return retry();
+	}
+
+	/**
+	 * 开始下一轮，直到提交成功或没有剩余重试次数，需持有锁
+	 * @return 是否已失败结束
+	 */
+	private boolean retry() {
+		if (timed)
+			ExecutionTimer.getInstance().cancel(timeoutNode);
+		while (retriesLeft > 0) {
+			retriesLeft--;
+			executor.retriedCount.incrementAndGet();
+			WorkItemEvents.retry(poolName(), task, attempts + 1, lastError);
+			nextRound();
+			primary = launchPrimary(WorkItemEvents.KIND_RETRY);
+			if (primary != null) {
+				scheduleTimers();
+				return false;
+			}
+		}
+		finished = true;
+		return true;
+	}
+
+	/**
+	 * 结束WorkItem（不持有锁，会回调afterExecute和完成回调）
+	 */
+	private void complete() {
+		WorkItem w = task;
+		Throwable thrown = lastError;
+		(thrown == null ? executor.succeededCount : executor.failedCount).incrementAndGet();
+		WorkItemEvents.complete(poolName(), w, attempts, System.nanoTime() - startNanos, thrown);
+		try {
+			w.setOver(thrown);
+		} finally {
+			boolean recycle;
+			synchronized (this) {
+				over = true;
+				recycle = outstanding == 0;
+			}
+			if (recycle)
+				recycle();
+		}
+	}
+
+	/**
+	 * 清理并放回对象池
+	 */
+	private void recycle() {
+		WorkItem w;
+		synchronized (this) {
+			w = task;
+			task = null;
+			hedgePolicy = null;
+			lastError = null;
+			primary = null;
+			hedge = null;
+		}
+		executor.releaseExecution(this);
+		if (w != null)
+			w.detachExecution();
+	}
+}
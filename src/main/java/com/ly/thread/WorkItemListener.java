@@ -0,0 +1,14 @@
+package com.ly.thread;
+
+/**
+ * WorkItem运行完毕（成功或错误）的回调
+ *
+ *
+ */
+public interface WorkItemListener {
+	/**
+	 * 运行完毕，此时task.isOver()为true
+	 * @param task 线程任务
+	 */
+	void onComplete(WorkItem task);
+}
@@ -0,0 +1,57 @@
+package com.ly.thread;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * 线程池任务队列类型
+ *
+ *
+ */
+public enum WorkQueueType {
+	/** LinkedBlockingQueue：双锁链表队列，每次入队分配一个节点 **/
+	LINKED {
+		@Override
+		BlockingQueue<Runnable> newQueue(int capacity) {
+			return capacity > 0 ? new LinkedBlockingQueue<Runnable>(capacity) : new LinkedBlockingQueue<Runnable>();
+		}
+	},
+	/** MpmcArrayBlockingQueue：有界无锁数组队列，适合提交线程多、任务短的场景；队列满时提交被拒绝 **/
+	MPMC_ARRAY {
+		@Override
+		BlockingQueue<Runnable> newQueue(int capacity) {
+			return new MpmcArrayBlockingQueue<Runnable>(capacity > 0 ? capacity : DEFAULT_BOUNDED_CAPACITY);
+		}
+	},
+	/** ShardedWorkQueue：按提交线程分片的无界队列，空闲线程从其他分片窃取；capacity表示分片数，默认CPU核数 **/
+	SHARDED {
+		@Override
+		BlockingQueue<Runnable> newQueue(int capacity) {
+			return new ShardedWorkQueue(capacity, ShardedWorkQueue.Routing.THREAD);
+		}
+	},
+	/** 同SHARDED，但按WorkItem的hash选择分片 **/
+	SHARDED_HASH {
+		@Override
+		BlockingQueue<Runnable> newQueue(int capacity) {
+			return new ShardedWorkQueue(capacity, ShardedWorkQueue.Routing.HASH);
+		}
+	},
+	/** FairWorkQueue：按WorkItem.getTenant()分租户排队，租户之间加权轮询；capacity小于等于0表示无界 **/
+	FAIR {
+		@Override
+		BlockingQueue<Runnable> newQueue(int capacity) {
+			return new FairWorkQueue(capacity);
+		}
+	};
+
+	/** 有界队列的默认容量 **/
+	static final int DEFAULT_BOUNDED_CAPACITY = 1 << 16;
+
+	/**
+	 * 创建队列
+	 * @param capacity 容量，小于等于0表示默认容量（LINKED为无界）；分片队列表示分片数
+	 * @return
+	 */
+	abstract BlockingQueue<Runnable> newQueue(int capacity);
+}
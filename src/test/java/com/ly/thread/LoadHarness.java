@@ -0,0 +1,484 @@
+package com.ly.thread;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 线程池管理器的负载测试
+ * 	按固定随机种子生成混合任务（CPU计算、阻塞等待、失败后重试、超时、延迟提交），
+ * 	开环模式按泊松到达率提交（延迟从计划到达时间算起，不受线程池变慢的影响），闭环模式由固定数量的用户提交后等待完成再提交下一个。
+ * 	对每种线程队列类型分别创建管理器，预热后输出吞吐量、端到端延迟分位数、线程数和内存分配速率（依赖HotSpot的com.sun.management.ThreadMXBean）
+ * 用法：mvn -Pload-test verify [-Dload.mode=open|closed] [-Dload.rate=2000] [-Dload.users=32] [-Dload.duration=10] [-Dload.warmup=2]
+ * 	[-Dload.seed=42] [-Dload.poolSize=8] [-Dload.queues=LINKED,MPMC_ARRAY,SHARDED,FAIR] [-Dload.mix=cpu:40,blocking:30,failing:10,timeout:10,scheduled:10]
+ * 	[-Dload.profile=true]（开启TaskProfiler，输出各任务类的CPU时间和内存分配，可与关闭时的结果对比统计开销）
+ * 	或：mvn test-compile 后 java -cp target/classes:target/test-classes -Dload.mode=closed com.ly.thread.LoadHarness
+ *
+ */
+public class LoadHarness {
+	/**
+	 * 任务类型
+	 *
+	 */
+	static enum TaskKind {
+		/** CPU计算约50微秒 **/
+		CPU,
+		/** 阻塞等待1~3毫秒，模拟I/O **/
+		BLOCKING,
+		/** 前0~3次执行失败，最多重试2次 **/
+		FAILING,
+		/** 运行0~20毫秒，超时10毫秒，重试1次 **/
+		TIMEOUT,
+		/** 延迟0~20毫秒后提交的CPU任务，延迟从计划提交时间算起 **/
+		SCHEDULED
+	}
+	/** 每个阶段最多记录的延迟样本数 **/
+	private static final int MAX_SAMPLES = 1 << 21;
+	/** 阶段结束后等待在途任务的最长时间（毫秒）**/
+	private static final long DRAIN_MILLIS = 30000L;
+	/** 线程数采样间隔（毫秒）**/
+	private static final long SAMPLE_MILLIS = 5L;
+	/** 防止CPU计算被优化掉 **/
+	static volatile long sink;
+
+	public static void main(String[] args) throws Exception {
+		Config config = Config.fromSystemProperties();
+		System.out.println(config);
+		System.out.printf("%-12s%10s%9s%9s%9s%9s%8s%8s%8s%8s%8s%8s%8s%10s%10s%n", "queue", "tasks/s", "p50ms", "p90ms",
+				"p99ms", "p999ms", "ok", "error", "timeout", "reject", "active", "pool", "jvmThr", "allocMB/s", "B/task");
+		for (WorkQueueType type : config.queues) {
+			Result r = run(config, type);
+			System.out.printf("%-12s%10.0f%9.2f%9.2f%9.2f%9.2f%8d%8d%8d%8d%8d%8d%8d%10.1f%10.0f%n", type, r.throughput,
+					r.p50, r.p90, r.p99, r.p999, r.succeeded, r.failed, r.timedOut, r.rejected, r.peakActive,
+					r.largestPool, r.peakJvmThreads, r.allocMBps, r.bytesPerTask);
+			if (r.profile != null)
+				System.out.print(r.profile);
+		}
+		System.exit(0);
+	}
+
+	/**
+	 * 测试一种线程队列类型：预热一次，再测量一次
+	 */
+	static Result run(Config config, WorkQueueType type) throws InterruptedException {
+		MyThreadPoolExecutorManager manager = MyThreadPoolExecutorManager.getInstance("load-" + type, config.poolSize,
+				false, type, type == WorkQueueType.SHARDED || type == WorkQueueType.SHARDED_HASH ? -1 : 1 << 18);
+		try {
+			TaskProfiler profiler = config.profile ? manager.enableTaskProfiling() : null;
+			new Phase(config, manager, config.seed - 1L).run(config.warmupSeconds);
+			if (profiler != null)
+				profiler.reset();
+			Result r = new Phase(config, manager, config.seed).run(config.durationSeconds);
+			if (profiler != null)
+				r.profile = profiler + String.format("统计开销约%.1f毫秒%n", profiler.getOverheadNanos() / 1e6D);
+			return r;
+		} finally {
+			manager.shutdown();
+		}
+	}
+
+	/**
+	 * 一个阶段：生成负载、采样线程数、统计结果
+	 *
+	 */
+	static final class Phase {
+		private final Config config;
+		private final MyThreadPoolExecutorManager manager;
+		private final long seed;
+		private final long[] samples = new long[MAX_SAMPLES];
+		private final AtomicInteger sampleCount = new AtomicInteger();
+		private final AtomicLong succeeded = new AtomicLong();
+		private final AtomicLong failed = new AtomicLong();
+		private final AtomicLong timedOut = new AtomicLong();
+		private final AtomicLong rejected = new AtomicLong();
+		/** 已提交但未结束的任务数（包括等待延迟提交的）**/
+		private final AtomicLong inFlight = new AtomicLong();
+		/** 延迟提交定时器 **/
+		private final ScheduledThreadPoolExecutor delayer;
+		private volatile boolean running;
+		private volatile int peakActive;
+
+		Phase(Config config, MyThreadPoolExecutorManager manager, long seed) {
+			this.config = config;
+			this.manager = manager;
+			this.seed = seed;
+			this.delayer = new ScheduledThreadPoolExecutor(1, (Runnable r) -> {
+				Thread t = new Thread(r, "LoadHarness-delayer");
+				t.setDaemon(true);
+				return t;
+			});
+		}
+
+		Result run(int seconds) throws InterruptedException {
+			com.sun.management.ThreadMXBean mx = threadMXBean();
+			java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+			threads.resetPeakThreadCount();
+			Map<Long, Long> allocatedBefore = allocatedBytes(mx);
+			running = true;
+			Thread sampler = new Thread(() -> {
+				while (running) {
+					peakActive = Math.max(peakActive, manager.getActiveThreadCount());
+					LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(SAMPLE_MILLIS));
+				}
+			}, "LoadHarness-sampler");
+			sampler.setDaemon(true);
+			sampler.start();
+			long begin = System.nanoTime();
+			long end = begin + TimeUnit.SECONDS.toNanos(seconds);
+			if (config.closedLoop) {
+				Thread[] users = new Thread[config.users];
+				for (int i = 0; i < users.length; i++) {
+					final Random random = new Random(seed * 31L + i);
+					users[i] = new Thread(() -> closedLoop(random, end), "LoadHarness-user-" + i);
+					users[i].start();
+				}
+				for (Thread user : users) {
+					user.join();
+				}
+			} else {
+				openLoop(new Random(seed), begin, end);
+			}
+			long deadline = System.currentTimeMillis() + DRAIN_MILLIS;
+			while (inFlight.get() > 0L && System.currentTimeMillis() < deadline) {
+				Thread.sleep(1L);
+			}
+			long elapsed = System.nanoTime() - begin;
+			running = false;
+			delayer.shutdownNow();
+			Map<Long, Long> allocatedAfter = allocatedBytes(mx);
+			long allocated = 0L;
+			for (Map.Entry<Long, Long> e : allocatedAfter.entrySet()) {
+				Long before = allocatedBefore.get(e.getKey());
+				allocated += e.getValue() - (before == null ? 0L : before);
+			}
+			Result r = new Result();
+			long completed = succeeded.get() + failed.get();
+			r.throughput = completed * 1e9D / elapsed;
+			int n = Math.min(sampleCount.get(), samples.length);
+			long[] sorted = Arrays.copyOf(samples, n);
+			Arrays.sort(sorted);
+			r.p50 = percentileMillis(sorted, 0.5D);
+			r.p90 = percentileMillis(sorted, 0.9D);
+			r.p99 = percentileMillis(sorted, 0.99D);
+			r.p999 = percentileMillis(sorted, 0.999D);
+			r.succeeded = succeeded.get();
+			r.failed = failed.get();
+			r.timedOut = timedOut.get();
+			r.rejected = rejected.get();
+			r.peakActive = peakActive;
+			r.largestPool = manager.getLargestThreadCount();
+			r.peakJvmThreads = threads.getPeakThreadCount();
+			r.allocMBps = mx == null ? -1D : allocated * 1e9D / elapsed / (1024D * 1024D);
+			r.bytesPerTask = mx == null || completed == 0L ? -1D : (double) allocated / completed;
+			return r;
+		}
+
+		/**
+		 * 开环：按泊松到达率提交，不等待完成
+		 */
+		private void openLoop(Random random, long begin, long end) {
+			double meanGapNanos = 1e9D / config.rate;
+			long next = begin;
+			while (next < end) {
+				long wait = next - System.nanoTime();
+				if (wait > 0L)
+					LockSupport.parkNanos(wait);
+				TaskKind kind = config.nextKind(random);
+				submit(kind, newTask(kind, random), next, kind == TaskKind.SCHEDULED ? random.nextInt(21) : 0, null);
+				next += (long) (-Math.log(1D - random.nextDouble()) * meanGapNanos);
+			}
+		}
+
+		/**
+		 * 闭环：提交一个任务，完成后再提交下一个
+		 */
+		private void closedLoop(Random random, long end) {
+			Semaphore done = new Semaphore(0);
+			while (System.nanoTime() < end) {
+				TaskKind kind = config.nextKind(random);
+				submit(kind, newTask(kind, random), System.nanoTime(), kind == TaskKind.SCHEDULED ? random.nextInt(21) : 0, done);
+				done.acquireUninterruptibly();
+			}
+		}
+
+		/**
+		 * 提交任务，延迟提交的任务由定时器提交
+		 * @param intended 计划提交时间
+		 * @param delayMillis 延迟毫秒数
+		 * @param done 结束时释放的许可，可为null
+		 */
+		private void submit(TaskKind kind, WorkItem task, long intended, int delayMillis, Semaphore done) {
+			inFlight.incrementAndGet();
+			final long start = intended + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+			task.addCompletionListener((WorkItem w) -> {
+				record(System.nanoTime() - start);
+				if (w.isSuccess()) {
+					succeeded.incrementAndGet();
+				} else {
+					failed.incrementAndGet();
+					if (w.getThrown() instanceof TimeoutException)
+						timedOut.incrementAndGet();
+				}
+				inFlight.decrementAndGet();
+				if (done != null)
+					done.release();
+			});
+			if (delayMillis > 0) {
+				delayer.schedule(() -> execute(task, done), start - System.nanoTime(), TimeUnit.NANOSECONDS);
+			} else {
+				execute(task, done);
+			}
+		}
+
+		private void execute(WorkItem task, Semaphore done) {
+			try {
+				manager.doExecute(task);
+			} catch (RejectedExecutionException e) {
+				rejected.incrementAndGet();
+				inFlight.decrementAndGet();
+				if (done != null)
+					done.release();
+			}
+		}
+
+		private void record(long nanos) {
+			int i = sampleCount.getAndIncrement();
+			if (i < samples.length)
+				samples[i] = nanos;
+		}
+	}
+
+	/**
+	 * 创建一个任务
+	 */
+	static WorkItem newTask(TaskKind kind, Random random) {
+		switch (kind) {
+		case BLOCKING:
+			return new BlockingTask(1 + random.nextInt(3));
+		case FAILING:
+			return new FlakyTask(random.nextInt(4));
+		case TIMEOUT:
+			return new SlowTask(random.nextInt(21));
+		default:
+			return new CpuTask(20000);
+		}
+	}
+
+	/**
+	 * CPU计算任务
+	 *
+	 */
+	static final class CpuTask extends WorkItem {
+		private final int iterations;
+
+		CpuTask(int iterations) {
+			this.iterations = iterations;
+		}
+
+		@Override
+		public void run() {
+			long x = iterations;
+			for (int i = 0; i < iterations; i++) {
+				x ^= x << 13;
+				x ^= x >>> 7;
+				x ^= x << 17;
+			}
+			sink = x;
+		}
+	}
+
+	/**
+	 * 阻塞等待任务
+	 *
+	 */
+	static final class BlockingTask extends WorkItem {
+		private final long sleepMillis;
+
+		BlockingTask(long sleepMillis) {
+			this.sleepMillis = sleepMillis;
+		}
+
+		@Override
+		public void run() {
+			try {
+				Thread.sleep(sleepMillis);
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+
+	/**
+	 * 前几次执行失败的任务，最多重试2次
+	 *
+	 */
+	static final class FlakyTask extends WorkItem {
+		private final AtomicInteger failuresLeft;
+
+		FlakyTask(int failures) {
+			super(2);
+			this.failuresLeft = new AtomicInteger(failures);
+		}
+
+		@Override
+		public void run() {
+			if (failuresLeft.getAndDecrement() > 0)
+				throw new IllegalStateException("模拟失败");
+		}
+	}
+
+	/**
+	 * 可能超时的任务：超时10毫秒，重试1次
+	 *
+	 */
+	static final class SlowTask extends WorkItem {
+		private final long sleepMillis;
+
+		SlowTask(long sleepMillis) {
+			super(1, 10L, TimeUnit.MILLISECONDS);
+			this.sleepMillis = sleepMillis;
+		}
+
+		@Override
+		public void run() {
+			try {
+				Thread.sleep(sleepMillis);
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+
+	private static double percentileMillis(long[] sorted, double p) {
+		if (sorted.length == 0)
+			return -1D;
+		int index = (int) Math.ceil(p * sorted.length) - 1;
+		return sorted[Math.max(index, 0)] / 1e6D;
+	}
+
+	private static com.sun.management.ThreadMXBean threadMXBean() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (!(bean instanceof com.sun.management.ThreadMXBean))
+			return null;
+		com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) bean;
+		mx.setThreadAllocatedMemoryEnabled(true);
+		return mx;
+	}
+
+	/**
+	 * 各线程已分配的字节数
+	 */
+	private static Map<Long, Long> allocatedBytes(com.sun.management.ThreadMXBean mx) {
+		Map<Long, Long> result = new HashMap<Long, Long>();
+		if (mx == null)
+			return result;
+		long[] ids = mx.getAllThreadIds();
+		long[] bytes = mx.getThreadAllocatedBytes(ids);
+		for (int i = 0; i < ids.length; i++) {
+			if (bytes[i] > 0L)
+				result.put(ids[i], bytes[i]);
+		}
+		return result;
+	}
+
+	/**
+	 * 一次测量的结果
+	 *
+	 */
+	static final class Result {
+		double throughput;
+		double p50, p90, p99, p999;
+		long succeeded, failed, timedOut, rejected;
+		int peakActive, largestPool, peakJvmThreads;
+		double allocMBps, bytesPerTask;
+		/** 任务统计（开启load.profile时）**/
+		String profile;
+	}
+
+	/**
+	 * 测试配置，从系统属性读取
+	 *
+	 */
+	static final class Config {
+		boolean closedLoop;
+		int rate;
+		int users;
+		int durationSeconds;
+		int warmupSeconds;
+		long seed;
+		int poolSize;
+		boolean profile;
+		WorkQueueType[] queues;
+		/** 各任务类型的权重，下标为TaskKind.ordinal() **/
+		final int[] mix = new int[TaskKind.values().length];
+		int mixTotal;
+
+		static Config fromSystemProperties() {
+			Config c = new Config();
+			c.closedLoop = "closed".equalsIgnoreCase(System.getProperty("load.mode", "open"));
+			c.rate = Integer.getInteger("load.rate", 2000);
+			c.users = Integer.getInteger("load.users", 32);
+			c.durationSeconds = Integer.getInteger("load.duration", 10);
+			c.warmupSeconds = Integer.getInteger("load.warmup", 2);
+			c.seed = Long.getLong("load.seed", 42L);
+			c.poolSize = Integer.getInteger("load.poolSize", 8);
+			c.profile = Boolean.getBoolean("load.profile");
+			String[] queues = System.getProperty("load.queues", "LINKED,MPMC_ARRAY,SHARDED,FAIR").split(",");
+			c.queues = new WorkQueueType[queues.length];
+			for (int i = 0; i < queues.length; i++) {
+				c.queues[i] = WorkQueueType.valueOf(queues[i].trim().toUpperCase());
+			}
+			for (String part : System.getProperty("load.mix", "cpu:40,blocking:30,failing:10,timeout:10,scheduled:10").split(",")) {
+				String[] kv = part.split(":");
+				int weight = Integer.parseInt(kv[1].trim());
+				if (weight < 0)
+					throw new IllegalArgumentException("load.mix的权重不能小于0：" + part);
+				c.mix[TaskKind.valueOf(kv[0].trim().toUpperCase()).ordinal()] = weight;
+			}
+			for (int w : c.mix) {
+				c.mixTotal += w;
+			}
+			if (c.rate <= 0 || c.users <= 0 || c.durationSeconds <= 0 || c.mixTotal <= 0)
+				throw new IllegalArgumentException("load.rate、load.users、load.duration、load.mix必须大于0");
+			return c;
+		}
+
+		/**
+		 * 按权重随机选择任务类型
+		 */
+		TaskKind nextKind(Random random) {
+			int r = random.nextInt(mixTotal);
+			TaskKind[] kinds = TaskKind.values();
+			for (int i = 0; i < kinds.length; i++) {
+				r -= mix[i];
+				if (r < 0)
+					return kinds[i];
+			}
+			return kinds[kinds.length - 1];
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			sb.append(closedLoop ? "闭环：" + users + "个用户" : "开环：" + rate + "个任务/秒")
+					.append("，测量").append(durationSeconds).append("秒（预热").append(warmupSeconds).append("秒）")
+					.append("，线程池大小").append(poolSize).append("，随机种子").append(seed)
+					.append(profile ? "，开启任务统计" : "").append("，任务比例");
+			TaskKind[] kinds = TaskKind.values();
+			for (int i = 0; i < kinds.length; i++) {
+				sb.append(i == 0 ? " " : ",").append(kinds[i]).append(':').append(mix[i]);
+			}
+			return sb.toString();
+		}
+	}
+}
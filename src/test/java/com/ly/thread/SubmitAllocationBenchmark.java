@@ -0,0 +1,95 @@
+package com.ly.thread;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 提交路径的内存分配测试
+ * 	统计稳定状态下每个WorkItem从doExecute到结束，所有线程（提交线程、线程池线程、定时器线程）分配的字节数，
+ * 	WorkItem本身在统计前创建，不计入；同时在途的任务数不超过对象池大小。依赖HotSpot的com.sun.management.ThreadMXBean
+ * 用法：mvn test-compile 后 java -cp target/classes:target/test-classes com.ly.thread.SubmitAllocationBenchmark [每轮任务数]
+ *
+ */
+public class SubmitAllocationBenchmark {
+	/** 预热轮数 **/
+	private static final int WARMUP_ROUNDS = 3;
+	/** 最大在途任务数 **/
+	private static final int WINDOW = 512;
+
+	public static void main(String[] args) throws Exception {
+		int tasks = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+			System.out.println("当前JVM不支持线程内存分配统计");
+			return;
+		}
+		com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) bean;
+		mx.setThreadAllocatedMemoryEnabled(true);
+		System.out.println("每轮" + tasks + "个任务，线程池大小4");
+		System.out.printf("%-12s%-10s%16s%16s%n", "queue", "timeout", "bytes/task", "tasks/s");
+		for (WorkQueueType type : new WorkQueueType[] {WorkQueueType.LINKED, WorkQueueType.MPMC_ARRAY}) {
+			for (boolean timed : new boolean[] {false, true}) {
+				TCThreadPoolExecutor executor = new TCThreadPoolExecutor(4, 4, 0L, TimeUnit.MILLISECONDS, type, -1);
+				try {
+					double[] result = null;
+					for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+						result = round(mx, executor, tasks, timed);
+					}
+					System.out.printf("%-12s%-10s%16.1f%16.0f%n", type, timed ? "1s" : "none", result[0], result[1]);
+				} finally {
+					executor.shutdown();
+				}
+			}
+		}
+	}
+
+	/**
+	 * 执行一轮
+	 * @return {每个任务分配的字节数, 每秒任务数}
+	 */
+	private static double[] round(com.sun.management.ThreadMXBean mx, TCThreadPoolExecutor executor, int tasks, boolean timed)
+			throws InterruptedException {
+		final CountDownLatch done = new CountDownLatch(tasks);
+		final AtomicInteger inFlight = new AtomicInteger();
+		WorkItem[] items = new WorkItem[tasks];
+		for (int i = 0; i < tasks; i++) {
+			items[i] = new WorkItem() {
+				@Override
+				public void run() {}
+
+				@Override
+				public void afterExecute(Throwable e) {
+					inFlight.decrementAndGet();
+					done.countDown();
+				}
+			};
+			if (timed)
+				items[i].setTimeout(1000L);
+		}
+		long[] ids = mx.getAllThreadIds();
+		long before = sum(mx.getThreadAllocatedBytes(ids));
+		long begin = System.nanoTime();
+		for (WorkItem w : items) {
+			while (inFlight.get() >= WINDOW) {
+				Thread.yield();
+			}
+			inFlight.incrementAndGet();
+			executor.doExecute(w);
+		}
+		done.await();
+		long elapsed = System.nanoTime() - begin;
+		long after = sum(mx.getThreadAllocatedBytes(ids));
+		return new double[] {(double) (after - before) / tasks, tasks * 1e9D / elapsed};
+	}
+
+	private static long sum(long[] values) {
+		long total = 0L;
+		for (long v : values) {
+			if (v > 0L)
+				total += v;
+		}
+		return total;
+	}
+}
@@ -0,0 +1,172 @@
+package com.ly.thread;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 线程池任务队列吞吐量对比：LinkedBlockingQueue vs MpmcArrayBlockingQueue vs ShardedWorkQueue
+ * 	1. 队列本身：不同生产者/消费者线程数下put/take的吞吐量
+ * 	2. 线程池：不同提交线程数下TCThreadPoolExecutor执行空任务的吞吐量
+ * 用法：mvn test-compile 后 java -cp target/classes:target/test-classes com.ly.thread.WorkQueueBenchmark [每轮元素数]
+ *
+ */
+public class WorkQueueBenchmark {
+	/** 队列容量 **/
+	private static final int CAPACITY = 1 << 14;
+	/** 线程数组合 **/
+	private static final int[] THREADS = {1, 2, 4, 8};
+	/** 预热轮数 **/
+	private static final int WARMUP_ROUNDS = 2;
+
+	public static void main(String[] args) throws Exception {
+		int items = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+		System.out.println("队列吞吐量（万次/秒），每轮" + items + "个元素");
+		System.out.printf("%-12s%-10s%-10s%14s%14s%14s%n", "queue", "producers", "consumers", "LINKED", "MPMC_ARRAY", "SHARDED");
+		for (int p : THREADS) {
+			for (int c : THREADS) {
+				double linked = queueThroughput(WorkQueueType.LINKED, p, c, items);
+				double mpmc = queueThroughput(WorkQueueType.MPMC_ARRAY, p, c, items);
+				double sharded = queueThroughput(WorkQueueType.SHARDED, p, c, items);
+				System.out.printf("%-12s%-10d%-10d%14.1f%14.1f%14.1f%n", "raw", p, c,
+						linked / 10000D, mpmc / 10000D, sharded / 10000D);
+			}
+		}
+		System.out.println();
+		System.out.println("线程池吞吐量（万次/秒），线程池大小4，空任务");
+		System.out.printf("%-12s%-10s%14s%14s%14s%n", "executor", "submitters", "LINKED", "MPMC_ARRAY", "SHARDED");
+		for (int p : THREADS) {
+			double linked = executorThroughput(WorkQueueType.LINKED, p, 4, items / 4);
+			double mpmc = executorThroughput(WorkQueueType.MPMC_ARRAY, p, 4, items / 4);
+			double sharded = executorThroughput(WorkQueueType.SHARDED, p, 4, items / 4);
+			System.out.printf("%-12s%-10d%14.1f%14.1f%14.1f%n", "execute", p,
+					linked / 10000D, mpmc / 10000D, sharded / 10000D);
+		}
+	}
+
+	/**
+	 * 队列put/take吞吐量（取预热后一轮）
+	 * @return 次/秒
+	 */
+	static double queueThroughput(WorkQueueType type, int producers, int consumers, int items) throws InterruptedException {
+		double result = 0D;
+		for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+			result = queueRound(type.newQueue(capacityOf(type)), producers, consumers, items);
+		}
+		return result;
+	}
+
+	private static double queueRound(final BlockingQueue<Runnable> queue, int producers, int consumers, int items)
+			throws InterruptedException {
+		final Runnable element = () -> {};
+		final int perProducer = items / producers;
+		final int total = perProducer * producers;
+		final AtomicLong remaining = new AtomicLong(total);
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch end = new CountDownLatch(producers + consumers);
+		for (int i = 0; i < producers; i++) {
+			startThread(() -> {
+				await(start);
+				try {
+					for (int n = 0; n < perProducer; n++) {
+						queue.put(element);
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				end.countDown();
+			});
+		}
+		for (int i = 0; i < consumers; i++) {
+			startThread(() -> {
+				await(start);
+				try {
+					while (remaining.getAndDecrement() > 0L) {
+						queue.take();
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				end.countDown();
+			});
+		}
+		long begin = System.nanoTime();
+		start.countDown();
+		end.await();
+		return total * 1e9D / (System.nanoTime() - begin);
+	}
+
+	/**
+	 * 线程池执行空任务的吞吐量（取预热后一轮）
+	 * @return 次/秒
+	 */
+	static double executorThroughput(WorkQueueType type, int submitters, int poolSize, int items) throws InterruptedException {
+		double result = 0D;
+		for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+			TCThreadPoolExecutor executor = new TCThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS, type, capacityOf(type));
+			try {
+				result = executorRound(executor, submitters, items);
+			} finally {
+				executor.shutdown();
+				executor.awaitTermination(1L, TimeUnit.MINUTES);
+			}
+		}
+		return result;
+	}
+
+	private static double executorRound(final TCThreadPoolExecutor executor, int submitters, int items) throws InterruptedException {
+		final int perSubmitter = items / submitters;
+		final CountDownLatch done = new CountDownLatch(perSubmitter * submitters);
+		final Runnable task = () -> done.countDown();
+		final CountDownLatch start = new CountDownLatch(1);
+		for (int i = 0; i < submitters; i++) {
+			startThread(() -> {
+				await(start);
+				for (int n = 0; n < perSubmitter; n++) {
+					submit(executor, task);
+				}
+			});
+		}
+		long begin = System.nanoTime();
+		start.countDown();
+		done.await();
+		return perSubmitter * submitters * 1e9D / (System.nanoTime() - begin);
+	}
+
+	/**
+	 * 有界队列满时稍后重试
+	 */
+	private static void submit(TCThreadPoolExecutor executor, Runnable task) {
+		for (;;) {
+			try {
+				executor.execute(task);
+				return;
+			} catch (RejectedExecutionException e) {
+				Thread.yield();
+			}
+		}
+	}
+
+	/**
+	 * 分片队列使用默认分片数（CPU核数），其他队列使用相同容量
+	 */
+	private static int capacityOf(WorkQueueType type) {
+		return type == WorkQueueType.SHARDED || type == WorkQueueType.SHARDED_HASH ? 0 : CAPACITY;
+	}
+
+	private static void startThread(Runnable r) {
+		Thread t = new Thread(r);
+		t.setDaemon(true);
+		t.start();
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}